@@ -0,0 +1,147 @@
+package cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import utils.Metrics;
+
+/**
+ * Two-tier cache of blob contents, each kept along with its version (entity tag).
+ *
+ * - local: an off-heap LRU of BLOB_CACHE_LOCAL_BYTES, whose entries expire after
+ *   BLOB_CACHE_LOCAL_TTL_SECONDS, so deletes on other nodes are seen eventually;
+ * - redis: raw bytes in the hash blob:<id> (fields d and v), for blobs of at most
+ *   BLOB_CACHE_REDIS_MAX_BYTES, expiring after BLOB_CACHE_REDIS_TTL_SECONDS.
+ *
+ * Blobs larger than BLOB_CACHE_MAX_ENTRY_BYTES are not cached at all; they are remembered
+ * locally, so they are streamed from storage without being looked up again.
+ *
+ * Exposes the metrics blobs.cache.local.* (see OffHeapCache) and blobs.cache.redis.hits,
+ * .misses, .bytes and .rejected.
+ */
+public class BlobCache {
+	private static final Logger Log = Logger.getLogger(BlobCache.class.getName());
+
+	public static final long MAX_ENTRY_BYTES = Long.getLong("BLOB_CACHE_MAX_ENTRY_BYTES", 8 * 1024 * 1024);
+
+	private static final long LOCAL_BYTES = Long.getLong("BLOB_CACHE_LOCAL_BYTES", 256 * 1024 * 1024);
+	private static final long LOCAL_TTL = Long.getLong("BLOB_CACHE_LOCAL_TTL_SECONDS", 300);
+	private static final long REDIS_MAX_BYTES = Long.getLong("BLOB_CACHE_REDIS_MAX_BYTES", 1024 * 1024);
+	private static final long REDIS_TTL = Long.getLong("BLOB_CACHE_REDIS_TTL_SECONDS", 600);
+	private static final int MAX_UNCACHEABLE = 10000;
+
+	private static final String KEY_PREFIX = "blob:";
+	private static final byte[] DATA = "d".getBytes(UTF_8);
+	private static final byte[] VERSION = "v".getBytes(UTF_8);
+
+	private final OffHeapCache local = new OffHeapCache("blobs.cache.local", LOCAL_BYTES, LOCAL_TTL * 1000);
+
+	private final Set<String> uncacheable = Collections.newSetFromMap(new LinkedHashMap<>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_UNCACHEABLE;
+		}
+	});
+
+	/**
+	 * @return the cached blob, from the local tier or else from Redis, or null
+	 */
+	public OffHeapCache.Entry get(String id) {
+		var e = local.get(id);
+		if (e != null)
+			return e;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var fields = jedis.hmget(key(id), DATA, VERSION);
+			var data = fields.get(0);
+			if (data == null) {
+				Metrics.counter("blobs.cache.redis.misses").increment();
+				return null;
+			}
+			Metrics.counter("blobs.cache.redis.hits").increment();
+			Metrics.counter("blobs.cache.redis.bytes").add(data.length);
+
+			var version = fields.get(1) != null ? new String(fields.get(1), UTF_8) : null;
+			local.put(id, data, version);
+			return new OffHeapCache.Entry(ByteBuffer.wrap(data).asReadOnlyBuffer(), version, 0);
+		} catch (JedisException x) {
+			Log.warning("Unable to read blob " + id + " from the cache: " + x.getMessage());
+			return null;
+		}
+	}
+
+	public void put(String id, byte[] data, String version) {
+		if (data.length > MAX_ENTRY_BYTES)
+			return;
+
+		local.put(id, data, version);
+		if (data.length > REDIS_MAX_BYTES) {
+			Metrics.counter("blobs.cache.redis.rejected").increment();
+			return;
+		}
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var key = key(id);
+			var pipeline = jedis.pipelined();
+			pipeline.hset(key, version != null ? Map.of(DATA, data, VERSION, version.getBytes(UTF_8)) : Map.of(DATA, data));
+			pipeline.expire(key, REDIS_TTL);
+			pipeline.sync();
+		} catch (JedisException x) {
+			Log.warning("Unable to cache blob " + id + ": " + x.getMessage());
+		}
+	}
+
+	public void remove(String id) {
+		local.remove(id);
+		synchronized (uncacheable) {
+			uncacheable.remove(id);
+		}
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(key(id));
+		} catch (JedisException x) {
+			Log.warning("Unable to remove blob " + id + " from the cache: " + x.getMessage());
+		}
+	}
+
+	public void removeAll(Collection<String> ids) {
+		if (ids.isEmpty())
+			return;
+
+		for (var id : ids)
+			local.remove(id);
+		synchronized (uncacheable) {
+			uncacheable.removeAll(ids);
+		}
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(ids.stream().map(BlobCache::key).toArray(byte[][]::new));
+		} catch (JedisException x) {
+			Log.warning("Unable to remove " + ids.size() + " blobs from the cache: " + x.getMessage());
+		}
+	}
+
+	public boolean isCacheable(String id) {
+		synchronized (uncacheable) {
+			return !uncacheable.contains(id);
+		}
+	}
+
+	public void markUncacheable(String id) {
+		synchronized (uncacheable) {
+			uncacheable.add(id);
+		}
+	}
+
+	private static byte[] key(String id) {
+		return (KEY_PREFIX + id).getBytes(UTF_8);
+	}
+}
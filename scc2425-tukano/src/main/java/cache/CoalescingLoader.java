@@ -0,0 +1,93 @@
+package cache;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import utils.Metrics;
+import utils.Sleep;
+
+/**
+ * Loads what is missing from the cache at most once at a time per key: concurrent misses on
+ * a node wait for the load already running (see {@link SingleFlight}).
+ *
+ * If CACHE_LOAD_LEASE is true, loads are also coordinated across nodes by a lease in Redis,
+ * lease:<key>, held for at most CACHE_LOAD_LEASE_MILLIS. A node that does not get the lease
+ * polls the cache until the value shows up, and only loads it itself if the lease expires
+ * first, or if Redis fails.
+ *
+ * Exposes the metrics <name>.singleflight.loads and .coalesced, and <name>.lease.acquired,
+ * .waited (served by the load of another node) and .expired.
+ */
+public class CoalescingLoader<V> {
+	private static final Logger Log = Logger.getLogger(CoalescingLoader.class.getName());
+
+	private static final boolean LEASE = Boolean.getBoolean("CACHE_LOAD_LEASE");
+	private static final long LEASE_MILLIS = Long.getLong("CACHE_LOAD_LEASE_MILLIS", 2000);
+	private static final int POLL_MILLIS = 20;
+
+	private static final String LEASE_PREFIX = "lease:";
+	private static final String RELEASE = "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end";
+
+	private final SingleFlight<String, V> flights;
+	private final String name;
+
+	public CoalescingLoader(String name) {
+		this.name = name;
+		this.flights = new SingleFlight<>(name);
+	}
+
+	/**
+	 * @param key the cache key of the value
+	 * @param cached reads the value from the cache, or returns null if it is not there
+	 * @param loader loads the value from the database, and caches it
+	 */
+	public V load(String key, Supplier<V> cached, Supplier<V> loader) {
+		return flights.run(key, () -> LEASE ? leased(key, cached, loader) : loader.get());
+	}
+
+	private V leased(String key, Supplier<V> cached, Supplier<V> loader) {
+		var token = UUID.randomUUID().toString();
+		if (!acquire(key, token)) {
+			long deadline = System.currentTimeMillis() + LEASE_MILLIS;
+			while (System.currentTimeMillis() < deadline) {
+				Sleep.ms(POLL_MILLIS);
+				var value = cached.get();
+				if (value != null) {
+					Metrics.counter(name + ".lease.waited").increment();
+					return value;
+				}
+			}
+			Metrics.counter(name + ".lease.expired").increment();
+			return loader.get();
+		}
+		try {
+			Metrics.counter(name + ".lease.acquired").increment();
+			return loader.get();
+		} finally {
+			release(key, token);
+		}
+	}
+
+	// A failure to reach Redis counts as getting the lease, so that loads are never blocked.
+	private static boolean acquire(String key, String token) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			return jedis.set(LEASE_PREFIX + key, token, SetParams.setParams().nx().px(LEASE_MILLIS)) != null;
+		} catch (JedisException x) {
+			Log.warning("Unable to take the lease of " + key + ": " + x.getMessage());
+			return true;
+		}
+	}
+
+	private static void release(String key, String token) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.eval(RELEASE, List.of(LEASE_PREFIX + key), List.of(token));
+		} catch (JedisException x) {
+			Log.warning("Unable to release the lease of " + key + ": " + x.getMessage());
+		}
+	}
+}
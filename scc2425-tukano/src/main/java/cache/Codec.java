@@ -0,0 +1,15 @@
+package cache;
+
+/**
+ * Converts values to the bytes kept in Redis, and back. See {@link Codecs}.
+ */
+public interface Codec<T> {
+
+	byte[] encode(T value);
+
+	/**
+	 * @return the value, or null if the bytes were not written by this codec, in its
+	 *         current version
+	 */
+	T decode(byte[] bytes);
+}
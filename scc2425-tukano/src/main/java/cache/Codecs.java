@@ -0,0 +1,292 @@
+package cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import tukano.api.Page;
+import tukano.api.Short;
+import tukano.api.User;
+import utils.Metrics;
+
+/**
+ * Compact binary codecs of the values cached in Redis.
+ *
+ * Each value starts with a 3-byte header: the codec id, its schema version and flags.
+ * Values written by another codec or by another version of this one, including the JSON
+ * written before, are not decoded, and are to be dropped from the cache by the caller.
+ * Changing the layout of a codec means bumping its version.
+ *
+ * Fields are written in order, integers as varints and strings as their UTF-8 length + 1
+ * (0 for null) followed by the bytes. Bodies larger than CACHE_COMPRESS_ABOVE_BYTES are
+ * deflated, if that makes them smaller; the uncompressed length then precedes the body.
+ *
+ * Exposes the metrics cache.codec.compressed and cache.codec.undecodable.
+ */
+public final class Codecs {
+
+	private static final int COMPRESS_ABOVE = Integer.getInteger("CACHE_COMPRESS_ABOVE_BYTES", 1024);
+
+	private static final int HEADER = 3;
+	private static final int DEFLATED = 1;
+
+	private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+	public static final Codec<User> USER = new Binary<>(1, 1, Codecs::writeUser, Codecs::readUser);
+
+	public static final Codec<Short> SHORT = new Binary<>(2, 1, (out, s) -> {
+		out.string(s.getid());
+		out.string(s.getOwnerId());
+		out.string(s.getBlobUrl());
+		out.varlong(s.getTimestamp());
+		out.varlong(s.getTotalLikes());
+	}, in -> new Short(in.string(), in.string(), in.string(), in.varlong(), (int) in.varlong()));
+
+	public static final Codec<List<String>> STRINGS = new Binary<>(3, 1, list(Out::string), list(In::string));
+
+	public static final Codec<List<User>> USERS = new Binary<>(4, 1, list(Codecs::writeUser), list(Codecs::readUser));
+
+	public static final Codec<Page<String>> STRING_PAGE = new Binary<>(5, 1, page(Out::string), page(In::string));
+
+	public static final Codec<Page<User>> USER_PAGE = new Binary<>(6, 1, page(Codecs::writeUser), page(Codecs::readUser));
+
+	private Codecs() {
+	}
+
+	private static void writeUser(Out out, User u) {
+		out.string(u.getid());
+		out.string(u.getPwd());
+		out.string(u.getEmail());
+		out.string(u.getDisplayName());
+	}
+
+	private static User readUser(In in) {
+		return new User(in.string(), in.string(), in.string(), in.string());
+	}
+
+	private static <T> Writer<List<T>> list(Writer<T> items) {
+		return (out, list) -> {
+			out.varlong(list.size());
+			for (var item : list)
+				items.write(out, item);
+		};
+	}
+
+	private static <T> Reader<List<T>> list(Reader<T> items) {
+		return in -> {
+			int n = (int) in.varlong();
+			var list = new ArrayList<T>(Math.min(n, 1024));
+			for (int i = 0; i < n; i++)
+				list.add(items.read(in));
+			return list;
+		};
+	}
+
+	private static <T> Writer<Page<T>> page(Writer<T> items) {
+		var list = list(items);
+		return (out, page) -> {
+			out.string(page.getNext());
+			list.write(out, page.getItems());
+		};
+	}
+
+	private static <T> Reader<Page<T>> page(Reader<T> items) {
+		var list = list(items);
+		return in -> {
+			var next = in.string();
+			return new Page<>(list.read(in), next);
+		};
+	}
+
+	interface Writer<T> {
+		void write(Out out, T value);
+	}
+
+	interface Reader<T> {
+		T read(In in);
+	}
+
+	private static final class Binary<T> implements Codec<T> {
+		private final byte id;
+		private final byte version;
+		private final Writer<T> writer;
+		private final Reader<T> reader;
+
+		Binary(int id, int version, Writer<T> writer, Reader<T> reader) {
+			this.id = (byte) id;
+			this.version = (byte) version;
+			this.writer = writer;
+			this.reader = reader;
+		}
+
+		@Override
+		public byte[] encode(T value) {
+			var out = new Out();
+			writer.write(out, value);
+			int length = out.size;
+
+			if (length > COMPRESS_ABOVE) {
+				var deflated = deflate(out.bytes, length);
+				if (deflated != null) {
+					Metrics.counter("cache.codec.compressed").increment();
+					var res = new Out();
+					res.header(id, version, DEFLATED);
+					res.varlong(length);
+					res.raw(deflated, deflated.length);
+					return res.toByteArray();
+				}
+			}
+			var res = new Out(HEADER + length);
+			res.header(id, version, 0);
+			res.raw(out.bytes, length);
+			return res.toByteArray();
+		}
+
+		@Override
+		public T decode(byte[] bytes) {
+			if (bytes.length < HEADER || bytes[0] != id || bytes[1] != version) {
+				Metrics.counter("cache.codec.undecodable").increment();
+				return null;
+			}
+			try {
+				var in = new In(bytes, HEADER, bytes.length);
+				if ((bytes[2] & DEFLATED) != 0) {
+					int length = (int) in.varlong();
+					in = new In(inflate(bytes, in.pos, length), 0, length);
+				}
+				return reader.read(in);
+			} catch (RuntimeException | DataFormatException x) {
+				Metrics.counter("cache.codec.undecodable").increment();
+				return null;
+			}
+		}
+	}
+
+	// null if deflating does not make the bytes smaller
+	private static byte[] deflate(byte[] bytes, int length) {
+		var deflater = deflaters.get();
+		deflater.reset();
+		deflater.setInput(bytes, 0, length);
+		deflater.finish();
+		var buf = new byte[length];
+		int n = deflater.deflate(buf);
+		return deflater.finished() && n < length ? Arrays.copyOf(buf, n) : null;
+	}
+
+	private static byte[] inflate(byte[] bytes, int offset, int length) throws DataFormatException {
+		var inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(bytes, offset, bytes.length - offset);
+		var buf = new byte[length];
+		int n = 0;
+		while (n < length && !inflater.finished()) {
+			int k = inflater.inflate(buf, n, length - n);
+			if (k == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new DataFormatException("truncated");
+			n += k;
+		}
+		// Reads the checksum at the end, which must follow the length announced.
+		if (n != length || inflater.inflate(new byte[1]) != 0 || !inflater.finished())
+			throw new DataFormatException("length mismatch");
+		return buf;
+	}
+
+	static final class Out {
+		private byte[] bytes;
+		private int size;
+
+		Out() {
+			this(64);
+		}
+
+		Out(int capacity) {
+			this.bytes = new byte[capacity];
+		}
+
+		void header(byte id, byte version, int flags) {
+			ensure(HEADER);
+			bytes[size++] = id;
+			bytes[size++] = version;
+			bytes[size++] = (byte) flags;
+		}
+
+		// Zig-zag, so that small negative numbers are short too.
+		void varlong(long v) {
+			v = (v << 1) ^ (v >> 63);
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void string(String s) {
+			if (s == null) {
+				varlong(0);
+				return;
+			}
+			var b = s.getBytes(UTF_8);
+			varlong(b.length + 1L);
+			raw(b, b.length);
+		}
+
+		void raw(byte[] b, int length) {
+			ensure(length);
+			System.arraycopy(b, 0, bytes, size, length);
+			size += length;
+		}
+
+		byte[] toByteArray() {
+			return size == bytes.length ? bytes : Arrays.copyOf(bytes, size);
+		}
+
+		private void ensure(int n) {
+			if (size + n > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + n));
+		}
+	}
+
+	static final class In {
+		private final byte[] bytes;
+		private final int end;
+		private int pos;
+
+		In(byte[] bytes, int pos, int end) {
+			this.bytes = bytes;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		long varlong() {
+			long v = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				if (pos >= end)
+					throw new IndexOutOfBoundsException(pos);
+				byte b = bytes[pos++];
+				v |= (long) (b & 0x7F) << shift;
+				if (b >= 0)
+					return (v >>> 1) ^ -(v & 1);
+			}
+			throw new IllegalStateException("malformed varint");
+		}
+
+		String string() {
+			long n = varlong();
+			if (n == 0)
+				return null;
+			int length = (int) (n - 1);
+			if (length < 0 || length > end - pos)
+				throw new IndexOutOfBoundsException(length);
+			var s = new String(bytes, pos, length, UTF_8);
+			pos += length;
+			return s;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package cache;
+
+/**
+ * Count-min sketch of how often keys were seen recently, with 4 counters per key of at most
+ * 15 each. All counters are halved once the number of increments reaches 10 times the
+ * number of keys being tracked, so the estimates favour recent popularity.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+final class FrequencySketch {
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = { 0x97cb3127, 0x0ba3b8d5, 0x85ebca6b, 0xc2b2ae35 };
+
+	private final byte[] counters;
+	private final int mask;
+	private final int resetAfter;
+	private int increments;
+
+	FrequencySketch(int keys) {
+		int size = Integer.highestOneBit(Math.max(16, keys) * 4 - 1) << 1;
+		this.counters = new byte[size];
+		this.mask = size - 1;
+		this.resetAfter = Math.max(16, keys) * 10;
+	}
+
+	int frequency(Object key) {
+		int h = spread(key.hashCode());
+		int min = MAX_COUNT;
+		for (var seed : SEEDS)
+			min = Math.min(min, counters[index(h, seed)]);
+		return min;
+	}
+
+	void increment(Object key) {
+		int h = spread(key.hashCode());
+		boolean added = false;
+		for (var seed : SEEDS) {
+			int i = index(h, seed);
+			if (counters[i] < MAX_COUNT) {
+				counters[i]++;
+				added = true;
+			}
+		}
+		if (added && ++increments >= resetAfter)
+			halve();
+	}
+
+	private void halve() {
+		for (int i = 0; i < counters.length; i++)
+			counters[i] >>= 1;
+		increments /= 2;
+	}
+
+	private int index(int h, int seed) {
+		h *= seed;
+		return (h ^ (h >>> 17)) & mask;
+	}
+
+	private static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x45d9f3b;
+		return h ^ (h >>> 16);
+	}
+}
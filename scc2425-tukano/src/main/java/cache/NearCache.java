@@ -0,0 +1,281 @@
+package cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import utils.Metrics;
+
+/**
+ * In-process cache, in front of Redis, of the objects stored under the Redis keys starting
+ * with a given prefix (e.g. user:). Values are shared by all callers and must not be modified.
+ *
+ * Holds at most NEAR_CACHE_SIZE entries, which expire after NEAR_CACHE_TTL_SECONDS. New
+ * entries go to a small LRU window; those evicted from it only take the place of the least
+ * recently used entry of the main LRU if they were seen more often recently (W-TinyLFU), so
+ * a burst of one-off lookups does not flush the popular entries.
+ *
+ * Lookups take no lock: values are read from a concurrent map, and the keys read are
+ * recorded in small per-thread-stripe buffers. Those are applied to the LRUs and to the
+ * frequency sketch by whoever next holds the policy lock: a writer, or a reader that finds
+ * it free once its buffer is half full. A full buffer drops further reads until drained,
+ * which only makes the policy slightly less precise.
+ *
+ * Changes made on any node are published by {@link #update} and {@link #invalidate}; see
+ * {@link NearCacheInvalidations}. Entries are only served while this node is subscribed to
+ * them, and are all dropped when the subscription is lost.
+ *
+ * Exposes the metrics <name>.hits, .misses, .evictions, .rejected, .invalidations and the
+ * gauge <name>.entries.
+ */
+public class NearCache<V> {
+
+	private static final int SIZE = Integer.getInteger("NEAR_CACHE_SIZE", 10000);
+	private static final long TTL = Long.getLong("NEAR_CACHE_TTL_SECONDS", 60);
+
+	private static final int READ_STRIPES = 16;
+	private static final int READ_BUFFER = 128;
+
+	private record Entry<V>(V value, long expires) {
+	}
+
+	private final String prefix;
+	private final long ttlMillis;
+	private final int windowSize;
+	private final int mainSize;
+	private final Map<String, Entry<V>> data = new ConcurrentHashMap<>();
+
+	// Guards the LRUs, the sketch and the changes to data.
+	private final ReentrantLock policy = new ReentrantLock();
+	private final LinkedHashMap<String, Entry<V>> window = new LinkedHashMap<>(64, 0.75f, true);
+	private final LinkedHashMap<String, Entry<V>> main = new LinkedHashMap<>(1024, 0.75f, true);
+	private final FrequencySketch sketch;
+	private volatile long invalidations;
+
+	// Keys read and not yet applied to the policy: slot i of a stripe holds read number i
+	// (modulo READ_BUFFER); readers claim them with writes, the drain advances drained.
+	private final AtomicReferenceArray<String> reads = new AtomicReferenceArray<>(READ_STRIPES * READ_BUFFER);
+	private final AtomicLongArray writes = new AtomicLongArray(READ_STRIPES);
+	private final AtomicLongArray drained = new AtomicLongArray(READ_STRIPES);
+	private volatile Consumer<String> listener = key -> {};
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+	private final LongAdder rejected;
+	private final LongAdder invalidated;
+
+	public NearCache(String name, String prefix) {
+		this(name, prefix, SIZE, TTL * 1000);
+	}
+
+	public NearCache(String name, String prefix, int size, long ttlMillis) {
+		this.prefix = prefix;
+		this.ttlMillis = ttlMillis;
+		this.windowSize = Math.max(1, size / 100);
+		this.mainSize = Math.max(1, size - windowSize);
+		this.sketch = new FrequencySketch(size);
+		this.hits = Metrics.counter(name + ".hits");
+		this.misses = Metrics.counter(name + ".misses");
+		this.evictions = Metrics.counter(name + ".evictions");
+		this.rejected = Metrics.counter(name + ".rejected");
+		this.invalidated = Metrics.counter(name + ".invalidations");
+		Metrics.gauge(name + ".entries", this::size);
+		NearCacheInvalidations.getInstance().register(this);
+	}
+
+	public String prefix() {
+		return prefix;
+	}
+
+	/**
+	 * @return true if the entries of this node are kept coherent with the other nodes
+	 */
+	public boolean isLive() {
+		return NearCacheInvalidations.getInstance().isLive();
+	}
+
+	/**
+	 * Sets who is told of each key changed, here or on another node, or of null when all
+	 * keys are dropped, to keep state derived from the cached values coherent as well.
+	 */
+	public void onInvalidate(Consumer<String> listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return the cached value, or null
+	 */
+	public V get(String key) {
+		if (!NearCacheInvalidations.getInstance().isLive()) {
+			misses.increment();
+			return null;
+		}
+		recordRead(key);
+		var e = data.get(key);
+		// Expired entries are left for the policy to replace or evict.
+		if (e != null && e.expires() < System.currentTimeMillis())
+			e = null;
+		(e != null ? hits : misses).increment();
+		return e != null ? e.value() : null;
+	}
+
+	/**
+	 * Taken before reading a value from Redis, to be passed to {@link #put(String, Object, long)}.
+	 */
+	public long stamp() {
+		return invalidations;
+	}
+
+	/**
+	 * Caches a value read from Redis, unless some entry was invalidated since the stamp was
+	 * taken, as the value read may then be stale.
+	 */
+	public void put(String key, V value, long stamp) {
+		if (value == null || !NearCacheInvalidations.getInstance().isLive())
+			return;
+		policy.lock();
+		try {
+			if (stamp != invalidations)
+				return;
+			drainReads();
+			add(key, value);
+		} finally {
+			policy.unlock();
+		}
+	}
+
+	/**
+	 * Caches the new value of a key changed by this node, and drops it on all other nodes.
+	 */
+	public void update(String key, V value) {
+		policy.lock();
+		try {
+			invalidations++;
+			drainReads();
+			remove(key);
+			if (NearCacheInvalidations.getInstance().isLive())
+				add(key, value);
+		} finally {
+			policy.unlock();
+		}
+		listener.accept(key);
+		NearCacheInvalidations.getInstance().publish(key);
+	}
+
+	/**
+	 * Drops the key on all nodes, this one included.
+	 */
+	public void invalidate(String key) {
+		evict(key);
+		NearCacheInvalidations.getInstance().publish(key);
+	}
+
+	void evict(String key) {
+		policy.lock();
+		try {
+			invalidations++;
+			if (remove(key))
+				invalidated.increment();
+		} finally {
+			policy.unlock();
+		}
+		listener.accept(key);
+	}
+
+	void clear() {
+		policy.lock();
+		try {
+			invalidations++;
+			window.clear();
+			main.clear();
+			data.clear();
+		} finally {
+			policy.unlock();
+		}
+		listener.accept(null);
+	}
+
+	// Called with the policy lock held.
+	private void add(String key, V value) {
+		var entry = new Entry<>(value, System.currentTimeMillis() + ttlMillis);
+		data.put(key, entry);
+		if (main.containsKey(key)) {
+			main.put(key, entry);
+			return;
+		}
+		window.put(key, entry);
+		if (window.size() <= windowSize)
+			return;
+
+		var candidate = eldest(window);
+		var candidateEntry = window.remove(candidate);
+		if (main.size() < mainSize) {
+			main.put(candidate, candidateEntry);
+			return;
+		}
+		var victim = eldest(main);
+		if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+			data.remove(victim, main.remove(victim));
+			main.put(candidate, candidateEntry);
+			evictions.increment();
+		} else {
+			data.remove(candidate, candidateEntry);
+			rejected.increment();
+		}
+	}
+
+	// Called with the policy lock held.
+	private boolean remove(String key) {
+		boolean removed = window.remove(key) != null | main.remove(key) != null;
+		data.remove(key);
+		return removed;
+	}
+
+	private void recordRead(String key) {
+		int stripe = (int) Thread.currentThread().getId() & (READ_STRIPES - 1);
+		long head = drained.get(stripe);
+		long tail = writes.get(stripe);
+		if (tail - head < READ_BUFFER && writes.compareAndSet(stripe, tail, tail + 1))
+			reads.lazySet(stripe * READ_BUFFER + (int) (tail & (READ_BUFFER - 1)), key);
+		if (tail - head >= READ_BUFFER / 2 && policy.tryLock()) {
+			try {
+				drainReads();
+			} finally {
+				policy.unlock();
+			}
+		}
+	}
+
+	// Called with the policy lock held. A slot claimed but not yet filled is skipped.
+	private void drainReads() {
+		for (int stripe = 0; stripe < READ_STRIPES; stripe++) {
+			long head = drained.get(stripe);
+			long tail = writes.get(stripe);
+			for (; head < tail; head++) {
+				var key = reads.getAndSet(stripe * READ_BUFFER + (int) (head & (READ_BUFFER - 1)), null);
+				if (key == null)
+					continue;
+				sketch.increment(key);
+				// Touches the entry, making it the most recently used.
+				if (window.get(key) == null)
+					main.get(key);
+			}
+			drained.set(stripe, head);
+		}
+	}
+
+	// The key of the least recently used entry, without touching it.
+	private static String eldest(LinkedHashMap<String, ?> lru) {
+		return lru.keySet().iterator().next();
+	}
+
+	private int size() {
+		return data.size();
+	}
+}
@@ -0,0 +1,106 @@
+package cache;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.exceptions.JedisException;
+import utils.Metrics;
+import utils.Sleep;
+
+/**
+ * Keeps the near caches of all nodes coherent, over the Redis channel near_cache_invalidations.
+ *
+ * Each change to a cached key is published as "<node> <key>"; every other node drops the key
+ * from the near cache of its prefix. The subscription runs on a daemon thread, which
+ * reconnects after failures; while it is down, near caches are empty and serve nothing, as
+ * the invalidations sent meanwhile are lost.
+ *
+ * Exposes the metrics near.invalidations.sent, .received and .reconnects.
+ */
+final class NearCacheInvalidations {
+	private static final Logger Log = Logger.getLogger(NearCacheInvalidations.class.getName());
+
+	static final String CHANNEL = "near_cache_invalidations";
+	private static final long MAX_BACKOFF_MILLIS = 30000;
+
+	private static NearCacheInvalidations instance;
+
+	private final String node = UUID.randomUUID().toString();
+	private final List<NearCache<?>> caches = new CopyOnWriteArrayList<>();
+	private volatile boolean live;
+
+	synchronized static NearCacheInvalidations getInstance() {
+		if (instance == null) {
+			instance = new NearCacheInvalidations();
+			var t = new Thread(instance::subscribe, "near-cache-invalidations");
+			t.setDaemon(true);
+			t.start();
+		}
+		return instance;
+	}
+
+	private NearCacheInvalidations() {
+	}
+
+	void register(NearCache<?> cache) {
+		caches.add(cache);
+	}
+
+	boolean isLive() {
+		return live;
+	}
+
+	void publish(String key) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.publish(CHANNEL, node + " " + key);
+			Metrics.counter("near.invalidations.sent").increment();
+		} catch (JedisException x) {
+			Log.warning("Unable to publish the invalidation of " + key + ": " + x.getMessage());
+		}
+	}
+
+	private void received(String message) {
+		int i = message.indexOf(' ');
+		if (i < 0 || message.startsWith(node + " "))
+			return;
+
+		Metrics.counter("near.invalidations.received").increment();
+		var key = message.substring(i + 1);
+		for (var cache : caches)
+			if (key.startsWith(cache.prefix()))
+				cache.evict(key);
+	}
+
+	private void subscribe() {
+		long backoff = 100;
+		for (;;) {
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				jedis.subscribe(new JedisPubSub() {
+					@Override
+					public void onSubscribe(String channel, int subscribedChannels) {
+						live = true;
+					}
+
+					@Override
+					public void onMessage(String channel, String message) {
+						received(message);
+					}
+				}, CHANNEL);
+			} catch (RuntimeException x) {
+				Log.warning("Near cache invalidations unavailable: " + x.getMessage());
+			}
+			if (live)
+				backoff = 100;
+			live = false;
+			caches.forEach(NearCache::clear);
+			Metrics.counter("near.invalidations.reconnects").increment();
+
+			Sleep.ms((int) backoff);
+			backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+		}
+	}
+}
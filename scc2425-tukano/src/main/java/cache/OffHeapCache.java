@@ -0,0 +1,93 @@
+package cache;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import utils.Metrics;
+
+/**
+ * Size-bounded LRU cache of byte arrays kept in direct buffers, outside of the Java heap,
+ * so large cached values are neither scanned nor copied by the garbage collector.
+ *
+ * Entries expire ttlMillis after being added. The buffers handed out are read-only views,
+ * which stay valid after their entry is evicted.
+ *
+ * Exposes the metrics <name>.hits, <name>.misses, <name>.bytes (served) and the gauges
+ * <name>.used and <name>.entries.
+ */
+public class OffHeapCache {
+
+	public record Entry(ByteBuffer data, String version, long expires) {
+	}
+
+	private final long capacity;
+	private final long ttlMillis;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+	private long used;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder bytes;
+
+	public OffHeapCache(String name, long capacity, long ttlMillis) {
+		this.capacity = capacity;
+		this.ttlMillis = ttlMillis;
+		this.hits = Metrics.counter(name + ".hits");
+		this.misses = Metrics.counter(name + ".misses");
+		this.bytes = Metrics.counter(name + ".bytes");
+		Metrics.gauge(name + ".used", this::used);
+		Metrics.gauge(name + ".entries", this::size);
+	}
+
+	/**
+	 * @return the entry, with a buffer positioned at its start, or null
+	 */
+	public synchronized Entry get(String key) {
+		var e = entries.get(key);
+		if (e != null && e.expires() < System.currentTimeMillis()) {
+			remove(key);
+			e = null;
+		}
+		if (e == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		bytes.add(e.data().capacity());
+		return new Entry(e.data().duplicate(), e.version(), e.expires());
+	}
+
+	/**
+	 * Values larger than the whole cache are not kept.
+	 */
+	public synchronized void put(String key, byte[] data, String version) {
+		if (data.length > capacity)
+			return;
+
+		remove(key);
+		var buf = ByteBuffer.allocateDirect(data.length).put(data).flip().asReadOnlyBuffer();
+		entries.put(key, new Entry(buf, version, System.currentTimeMillis() + ttlMillis));
+		used += data.length;
+
+		var it = entries.values().iterator();
+		while (used > capacity && it.hasNext()) {
+			used -= it.next().data().capacity();
+			it.remove();
+		}
+	}
+
+	public synchronized void remove(String key) {
+		var e = entries.remove(key);
+		if (e != null)
+			used -= e.data().capacity();
+	}
+
+	private synchronized long used() {
+		return used;
+	}
+
+	private synchronized int size() {
+		return entries.size();
+	}
+}
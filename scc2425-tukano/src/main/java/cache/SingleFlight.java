@@ -0,0 +1,61 @@
+package cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import utils.Metrics;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader and the
+ * others wait for its result, instead of all of them going to the backend at once.
+ *
+ * Exposes the metrics <name>.singleflight.loads and <name>.singleflight.coalesced.
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+	private final LongAdder loads;
+	private final LongAdder coalesced;
+
+	public SingleFlight(String name) {
+		this.loads = Metrics.counter(name + ".singleflight.loads");
+		this.coalesced = Metrics.counter(name + ".singleflight.coalesced");
+	}
+
+	/**
+	 * @return the value loaded by this caller, or by the caller already loading the key
+	 */
+	public V run(K key, Supplier<V> loader) {
+		var mine = new CompletableFuture<V>();
+		var flight = flights.putIfAbsent(key, mine);
+		if (flight != null) {
+			coalesced.increment();
+			return join(flight);
+		}
+
+		loads.increment();
+		try {
+			var value = loader.get();
+			mine.complete(value);
+			return value;
+		} catch (RuntimeException | Error x) {
+			mine.completeExceptionally(x);
+			throw x;
+		} finally {
+			flights.remove(key, mine);
+		}
+	}
+
+	private static <V> V join(CompletableFuture<V> flight) {
+		try {
+			return flight.join();
+		} catch (CompletionException x) {
+			if (x.getCause() instanceof RuntimeException e)
+				throw e;
+			throw x;
+		}
+	}
+}
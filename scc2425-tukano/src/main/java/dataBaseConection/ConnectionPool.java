@@ -0,0 +1,330 @@
+package dataBaseConection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import utils.Metrics;
+
+/**
+ * A bounded pool of JDBC connections.
+ *
+ * Connections are leased per request and given back by closing them, so callers
+ * use the usual try-with-resources idiom:
+ *
+ * <pre>
+ * try (Connection conn = pool.lease(); PreparedStatement stmt = conn.prepareStatement(sql)) { ... }
+ * </pre>
+ *
+ * The number of leased connections never exceeds maxSize; callers block up to maxWait
+ * for one to be returned. Validation of idle connections, topping up to minSize and
+ * leak detection all run on a background thread, off the request path.
+ *
+ * Each pooled connection keeps its own {@link StatementCache}, so prepareStatement(sql)
+ * with constant SQL text reuses the statement planned on an earlier lease.
+ */
+public class ConnectionPool {
+	private static final Logger Log = Logger.getLogger(ConnectionPool.class.getName());
+
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+	public interface ConnectionFactory {
+		Connection open() throws SQLException;
+	}
+
+	private final String name;
+	private final ConnectionFactory factory;
+	private final int minSize;
+	private final long maxWaitMillis;
+	private final long validationIntervalMillis;
+	private final long maxIdleMillis;
+	private final long leakThresholdMillis;
+	private final boolean leakTrace;
+	private final int statementCacheSize;
+
+	private final Semaphore permits;
+	private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+	private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService housekeeper;
+
+	private final LongAdder leases;
+	private final LongAdder waitNanos;
+	private final LongAdder timeouts;
+	private final LongAdder opened;
+	private final LongAdder discarded;
+	private final LongAdder leaks;
+
+	public ConnectionPool(String name, ConnectionFactory factory, int minSize, int maxSize, long maxWaitMillis,
+			long validationIntervalMillis, long maxIdleMillis, long leakThresholdMillis, boolean leakTrace, int statementCacheSize) {
+		this.name = name;
+		this.factory = factory;
+		this.minSize = minSize;
+		this.maxWaitMillis = maxWaitMillis;
+		this.validationIntervalMillis = validationIntervalMillis;
+		this.maxIdleMillis = maxIdleMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.leakTrace = leakTrace;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+
+		this.leases = Metrics.counter(name + ".leases");
+		this.waitNanos = Metrics.counter(name + ".waitNanos");
+		this.timeouts = Metrics.counter(name + ".timeouts");
+		this.opened = Metrics.counter(name + ".opened");
+		this.discarded = Metrics.counter(name + ".discarded");
+		this.leaks = Metrics.counter(name + ".leaks");
+		Metrics.gauge(name + ".active", this::active);
+		Metrics.gauge(name + ".idle", this::idle);
+
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			var t = new Thread(r, name + "-housekeeper");
+			t.setDaemon(true);
+			return t;
+		});
+		var period = Math.max(1000, Math.min(validationIntervalMillis, leakThresholdMillis > 0 ? leakThresholdMillis : Long.MAX_VALUE) / 2);
+		housekeeper.scheduleWithFixedDelay(this::housekeeping, 0, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Leases a connection from the pool, blocking up to maxWait if all connections are in use.
+	 * Closing the returned connection gives it back to the pool.
+	 */
+	public Connection lease() throws SQLException {
+		var start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new SQLTimeoutException(String.format("%s: no connection available after %d ms", name, maxWaitMillis));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(name + ": interrupted while waiting for a connection", e);
+		}
+		waitNanos.add(System.nanoTime() - start);
+		leases.increment();
+
+		// LIFO: the most recently returned connection is the one most likely to be alive and warm.
+		var pc = idle.pollFirst();
+		try {
+			if (pc == null)
+				pc = open();
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		var lease = new Lease(pc);
+		leased.add(lease);
+		return lease.proxy;
+	}
+
+	public int active() {
+		return leased.size();
+	}
+
+	public int idle() {
+		return idle.size();
+	}
+
+	public long averageWaitMicros() {
+		var n = leases.sum();
+		return n == 0 ? 0 : waitNanos.sum() / n / 1000;
+	}
+
+	public long timeouts() {
+		return timeouts.sum();
+	}
+
+	private PooledConnection open() throws SQLException {
+		var physical = factory.open();
+		var pc = new PooledConnection(physical, statementCacheSize > 0 ? new StatementCache(name, physical, statementCacheSize) : null);
+		opened.increment();
+		return pc;
+	}
+
+	private void giveBack(Lease lease) {
+		if (!leased.remove(lease))
+			return;
+
+		var pc = lease.pc;
+		try {
+			if (pc.broken || pc.physical.isClosed()) {
+				discard(pc);
+			} else {
+				if (!pc.physical.getAutoCommit()) {
+					pc.physical.rollback();
+					pc.physical.setAutoCommit(true);
+				}
+				if (pc.statements != null)
+					pc.statements.reset();
+				pc.lastUsed = System.currentTimeMillis();
+				idle.offerFirst(pc);
+			}
+		} catch (SQLException e) {
+			discard(pc);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private void discard(PooledConnection pc) {
+		discarded.increment();
+		try {
+			pc.physical.close();
+		} catch (SQLException e) {
+			Log.fine(() -> name + ": error closing discarded connection: " + e.getMessage());
+		}
+	}
+
+	private void housekeeping() {
+		try {
+			var now = System.currentTimeMillis();
+			validateIdle(now);
+			topUp();
+			detectLeaks(now);
+		} catch (RuntimeException e) {
+			Log.warning(name + ": housekeeping failed: " + e.getMessage());
+		}
+	}
+
+	private void validateIdle(long now) {
+		for (var pc : idle) {
+			var idleFor = now - pc.lastUsed;
+			if (idleFor < validationIntervalMillis)
+				continue;
+			// A lease may have grabbed it in the meantime; only check connections we managed to take out.
+			if (!idle.remove(pc))
+				continue;
+
+			if (idleFor > maxIdleMillis && idle.size() + leased.size() >= minSize) {
+				discard(pc);
+				continue;
+			}
+			boolean valid;
+			try {
+				valid = pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+			} catch (SQLException e) {
+				valid = false;
+			}
+			if (valid) {
+				pc.lastUsed = now;
+				idle.offerLast(pc);
+			} else
+				discard(pc);
+		}
+	}
+
+	private void topUp() {
+		while (idle.size() + leased.size() < minSize) {
+			try {
+				var pc = open();
+				pc.lastUsed = System.currentTimeMillis();
+				idle.offerLast(pc);
+			} catch (SQLException e) {
+				Log.warning(name + ": unable to open connection: " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	private void detectLeaks(long now) {
+		if (leakThresholdMillis <= 0)
+			return;
+
+		for (var lease : leased) {
+			if (!lease.reported && now - lease.leasedAt > leakThresholdMillis) {
+				lease.reported = true;
+				leaks.increment();
+				Log.warning(String.format("%s: connection leased by %s held for more than %d ms\n", name, lease.thread, leakThresholdMillis));
+				if (lease.origin != null)
+					Log.warning(() -> stackTraceOf(lease.origin));
+			}
+		}
+	}
+
+	private static String stackTraceOf(Throwable t) {
+		var sb = new StringBuilder("Leased at:\n");
+		for (var e : t.getStackTrace())
+			sb.append("\tat ").append(e).append('\n');
+		return sb.toString();
+	}
+
+	static class PooledConnection {
+		final Connection physical;
+		final StatementCache statements;
+		volatile long lastUsed;
+		volatile boolean broken;
+
+		PooledConnection(Connection physical, StatementCache statements) {
+			this.physical = physical;
+			this.statements = statements;
+		}
+	}
+
+	/**
+	 * One lease of a pooled connection. Handing out a fresh proxy per lease means a
+	 * caller that keeps a reference after close() cannot touch a connection that has
+	 * since been leased to someone else.
+	 */
+	class Lease implements InvocationHandler {
+		final PooledConnection pc;
+		final Connection proxy;
+		final long leasedAt = System.currentTimeMillis();
+		final String thread = Thread.currentThread().getName();
+		final Throwable origin = leakTrace ? new Throwable() : null;
+		volatile boolean closed;
+		volatile boolean reported;
+
+		Lease(PooledConnection pc) {
+			this.pc = pc;
+			this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed) {
+					closed = true;
+					giveBack(this);
+				}
+				return null;
+			case "isClosed":
+				return closed || pc.physical.isClosed();
+			case "equals":
+				return p == args[0];
+			case "hashCode":
+				return System.identityHashCode(p);
+			case "toString":
+				return name + "[" + pc.physical + "]";
+			default:
+				if (closed)
+					throw new SQLException(name + ": connection has already been returned to the pool");
+				try {
+					if (pc.statements != null && args != null && args.length == 1 && method.getName().equals("prepareStatement"))
+						return pc.statements.prepare((String) args[0]);
+
+					return method.invoke(pc.physical, args);
+				} catch (InvocationTargetException x) {
+					var cause = x.getCause();
+					// SQLState class 08 is "connection exception": do not hand this one out again.
+					if (cause instanceof SQLException sqle && sqle.getSQLState() != null && sqle.getSQLState().startsWith("08"))
+						pc.broken = true;
+					throw cause;
+				}
+			}
+		}
+	}
+}
@@ -3,21 +3,53 @@ package dataBaseConection;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Properties;
 
 
 public class DB_PostgresSQL {
 
-    private static Connection instance;
     private static final String DATA_BASE_URL = System.getProperty("COSMOSDB_POSTGRES_URL");
     private static final String USER = System.getProperty("COSMOSDB_POSTGRES_USER");
     private static final String PWD = System.getProperty("COSMOSDB_POSTGRES_PASSWORD");
 
-    public synchronized static Connection getConnection() throws SQLException {
-        if (instance != null && !instance.isClosed()) {
-            return instance;
-        }
+    private static final int POOL_MIN = Integer.getInteger("COSMOSDB_POSTGRES_POOL_MIN", 4);
+    private static final int POOL_MAX = Integer.getInteger("COSMOSDB_POSTGRES_POOL_MAX", 32);
+    private static final long POOL_MAX_WAIT = Long.getLong("COSMOSDB_POSTGRES_POOL_MAX_WAIT_MS", 5000);
+    private static final long POOL_VALIDATION_INTERVAL = Long.getLong("COSMOSDB_POSTGRES_POOL_VALIDATION_MS", 30000);
+    private static final long POOL_MAX_IDLE = Long.getLong("COSMOSDB_POSTGRES_POOL_MAX_IDLE_MS", 600000);
+    private static final long POOL_LEAK_THRESHOLD = Long.getLong("COSMOSDB_POSTGRES_POOL_LEAK_MS", 30000);
+    private static final boolean POOL_LEAK_TRACE = Boolean.getBoolean("COSMOSDB_POSTGRES_POOL_LEAK_TRACE");
 
-        instance = DriverManager.getConnection(DATA_BASE_URL, USER, PWD);
-        return instance;
+    // Statements kept open per pooled connection, and how many executions before the driver
+    // switches a statement to a named, server-side prepared statement.
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("COSMOSDB_POSTGRES_STATEMENT_CACHE", 64);
+    private static final String PREPARE_THRESHOLD = System.getProperty("COSMOSDB_POSTGRES_PREPARE_THRESHOLD", "1");
+
+    private static class Holder {
+        static final ConnectionPool pool = new ConnectionPool("postgres", DB_PostgresSQL::open,
+                POOL_MIN, POOL_MAX, POOL_MAX_WAIT, POOL_VALIDATION_INTERVAL, POOL_MAX_IDLE, POOL_LEAK_THRESHOLD, POOL_LEAK_TRACE,
+                STATEMENT_CACHE_SIZE);
+    }
+
+    public static ConnectionPool getPool() {
+        return Holder.pool;
+    }
+
+    /**
+     * Leases a connection from the pool. Must be closed (preferably with try-with-resources)
+     * to give it back.
+     */
+    public static Connection getConnection() throws SQLException {
+        return Holder.pool.lease();
+    }
+
+    private static Connection open() throws SQLException {
+        var props = new Properties();
+        if (USER != null)
+            props.setProperty("user", USER);
+        if (PWD != null)
+            props.setProperty("password", PWD);
+        props.setProperty("prepareThreshold", PREPARE_THRESHOLD);
+        return DriverManager.getConnection(DATA_BASE_URL, props);
     }
-}
\ No newline at end of file
+}
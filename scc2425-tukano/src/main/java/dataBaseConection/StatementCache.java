@@ -0,0 +1,160 @@
+package dataBaseConection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import utils.Metrics;
+
+/**
+ * LRU cache of prepared statements, keyed by SQL text, for a single pooled connection.
+ *
+ * Closing a statement obtained from the cache clears its parameters and keeps it open
+ * for the next caller that prepares the same SQL on this connection. A connection is
+ * leased to one thread at a time, so the cache needs no locking.
+ *
+ * If the same SQL is prepared again while the cached statement is still open (nested use),
+ * the second caller gets a regular, uncached statement.
+ */
+class StatementCache {
+	private static final Logger Log = Logger.getLogger(StatementCache.class.getName());
+
+	private final Connection physical;
+	private final Map<String, Entry> entries;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder bypasses;
+	private final LongAdder evictions;
+
+	StatementCache(String name, Connection physical, int capacity) {
+		this.physical = physical;
+		this.hits = Metrics.counter(name + ".statements.hits");
+		this.misses = Metrics.counter(name + ".statements.misses");
+		this.bypasses = Metrics.counter(name + ".statements.bypasses");
+		this.evictions = Metrics.counter(name + ".statements.evictions");
+		this.entries = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= capacity)
+					return false;
+				evictions.increment();
+				var e = eldest.getValue();
+				if (e.inUse)
+					e.evicted = true;
+				else
+					e.closeQuietly();
+				return true;
+			}
+		};
+	}
+
+	PreparedStatement prepare(String sql) throws SQLException {
+		var e = entries.get(sql);
+		if (e != null && !e.inUse) {
+			hits.increment();
+		} else if (e != null) {
+			bypasses.increment();
+			return physical.prepareStatement(sql);
+		} else {
+			misses.increment();
+			e = new Entry(physical.prepareStatement(sql));
+			entries.put(sql, e);
+		}
+		e.inUse = true;
+		return e.checkout();
+	}
+
+	/**
+	 * Called when the connection goes back to the pool: statements the borrower forgot
+	 * to close become available again.
+	 */
+	void reset() {
+		for (var e : entries.values())
+			if (e.inUse)
+				e.checkin();
+	}
+
+	static class Entry {
+		final PreparedStatement stmt;
+		Checkout current;
+		boolean inUse;
+		boolean evicted;
+
+		Entry(PreparedStatement stmt) {
+			this.stmt = stmt;
+		}
+
+		PreparedStatement checkout() {
+			current = new Checkout(this);
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, current);
+		}
+
+		void checkin() {
+			current.closed = true;
+			inUse = false;
+			if (evicted) {
+				closeQuietly();
+				return;
+			}
+			try {
+				stmt.clearParameters();
+				stmt.clearBatch();
+			} catch (SQLException x) {
+				Log.fine(() -> "Unable to reset cached statement: " + x.getMessage());
+			}
+		}
+
+		void closeQuietly() {
+			try {
+				stmt.close();
+			} catch (SQLException x) {
+				Log.fine(() -> "Unable to close cached statement: " + x.getMessage());
+			}
+		}
+	}
+
+	static class Checkout implements InvocationHandler {
+		final Entry entry;
+		boolean closed;
+
+		Checkout(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public Object invoke(Object p, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "close":
+				if (!closed)
+					entry.checkin();
+				return null;
+			case "isClosed":
+				return closed || entry.stmt.isClosed();
+			case "equals":
+				return p == args[0];
+			case "hashCode":
+				return System.identityHashCode(p);
+			default:
+				if (closed)
+					throw new SQLException("Statement has already been closed");
+				try {
+					return method.invoke(entry.stmt, args);
+				} catch (InvocationTargetException x) {
+					throw x.getCause();
+				}
+			}
+		}
+	}
+}
@@ -2,11 +2,12 @@ package tukano;
 
 import jakarta.ws.rs.core.Application;
 import tukano.impl.Token;
-import tukano.impl.rest.RestBlobsResource;
-import tukano.impl.rest.RestShortsResource;
-import tukano.impl.rest.RestUsersResource;
+import tukano.impl.rest.AsyncRestBlobsResource;
+import tukano.impl.rest.AsyncRestShortsResource;
+import tukano.impl.rest.AsyncRestUsersResource;
 import tukano.impl.rest.utils.CustomLoggingFilter;
 import tukano.impl.rest.utils.GenericExceptionMapper;
+import tukano.impl.rest.utils.JacksonMapperResolver;
 
 
 import java.util.HashSet;
@@ -20,12 +21,14 @@ public class MainApplication extends Application {
 
 
     public MainApplication () {
-        resources.add(RestBlobsResource.class);
-        resources.add(RestShortsResource.class);
-        resources.add(RestUsersResource.class);
+        // Servidas de forma assíncrona; o TukanoRestServer (jdk-http) usa os recursos síncronos
+        resources.add(AsyncRestBlobsResource.class);
+        resources.add(AsyncRestShortsResource.class);
+        resources.add(AsyncRestUsersResource.class);
 
           singletons.add(new CustomLoggingFilter());
         singletons.add(new GenericExceptionMapper());
+        singletons.add(new JacksonMapperResolver());
 
         Token.setSecret("59158");
     }
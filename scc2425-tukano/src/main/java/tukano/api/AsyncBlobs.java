@@ -0,0 +1,26 @@
+package tukano.api;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous counterpart of {@link Blobs}; see it for the semantics of each operation.
+ * 
+ * The returned stages complete with TIMEOUT if the operation takes too long.
+ */
+public interface AsyncBlobs {
+
+	CompletionStage<Result<Void>> upload(String blobId, byte[] bytes, String token);
+
+	CompletionStage<Result<Void>> upload(String blobId, InputStream bytes, String token);
+
+	CompletionStage<Result<byte[]>> download(String blobId, String token);
+
+	CompletionStage<Result<InputStream>> downloadStream(String blobId, String token);
+
+	CompletionStage<Result<BlobContent>> download(String blobId, long offset, long length, String ifVersion, String token);
+
+	CompletionStage<Result<Void>> delete(String blobId, String token);
+
+	CompletionStage<Result<Void>> deleteAllBlobs(String userId, String token);
+}
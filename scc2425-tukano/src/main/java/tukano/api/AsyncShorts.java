@@ -0,0 +1,40 @@
+package tukano.api;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous counterpart of {@link Shorts}; see it for the semantics of each operation.
+ * 
+ * The returned stages complete with TIMEOUT if the operation takes too long.
+ */
+public interface AsyncShorts {
+
+	CompletionStage<Result<Short>> createShort(String userId, String password);
+
+	CompletionStage<Result<Void>> deleteShort(String shortId, String password);
+
+	CompletionStage<Result<Short>> getShort(String shortId);
+
+	CompletionStage<Result<List<String>>> getShorts(String userId);
+
+	CompletionStage<Result<Page<String>>> getShorts(String userId, String cursor, int limit);
+
+	CompletionStage<Result<Void>> follow(String userId1, String userId2, boolean isFollowing, String password);
+
+	CompletionStage<Result<List<String>>> followers(String userId, String password);
+
+	CompletionStage<Result<Page<String>>> followers(String userId, String password, String cursor, int limit);
+
+	CompletionStage<Result<Void>> like(String shortId, String userId, boolean isLiked, String password);
+
+	CompletionStage<Result<List<String>>> likes(String shortId, String password);
+
+	CompletionStage<Result<Page<String>>> likes(String shortId, String password, String cursor, int limit);
+
+	CompletionStage<Result<List<String>>> getFeed(String userId, String password);
+
+	CompletionStage<Result<Page<String>>> getFeed(String userId, String password, String cursor, int limit);
+
+	CompletionStage<Result<Void>> deleteAllShorts(String userId, String password, String token);
+}
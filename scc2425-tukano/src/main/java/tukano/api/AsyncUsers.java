@@ -0,0 +1,28 @@
+package tukano.api;
+
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Asynchronous counterpart of {@link Users}; see it for the semantics of each operation.
+ * 
+ * The returned stages complete with TIMEOUT if the operation takes too long.
+ */
+public interface AsyncUsers {
+
+	CompletionStage<Result<String>> createUser(User user);
+
+	CompletionStage<Result<User>> getUser(String userId, String pwd);
+
+	CompletionStage<Result<String>> login(String userId, String pwd);
+
+	CompletionStage<Result<Void>> logout(String userId, String pwd);
+
+	CompletionStage<Result<User>> updateUser(String userId, String pwd, User user);
+
+	CompletionStage<Result<User>> deleteUser(String userId, String pwd);
+
+	CompletionStage<Result<List<User>>> searchUsers(String pattern);
+
+	CompletionStage<Result<Page<User>>> searchUsers(String pattern, String cursor, int limit);
+}
@@ -0,0 +1,22 @@
+package tukano.api;
+
+import java.io.InputStream;
+
+/**
+ * A range of bytes of a blob, open for reading; the reader must close the stream.
+ *
+ * @param stream  the bytes of the range
+ * @param offset  the position of the first byte of the range in the blob
+ * @param length  the number of bytes of the range
+ * @param size    the size of the whole blob
+ * @param version an opaque tag that changes whenever the blob changes (an entity tag)
+ */
+public record BlobContent(InputStream stream, long offset, long length, long size, String version) {
+
+	/**
+	 * @return true if the range is not the whole blob
+	 */
+	public boolean isPartial() {
+		return offset > 0 || length < size;
+	}
+}
@@ -1,5 +1,7 @@
 package tukano.api;
 
+import java.io.InputStream;
+
 /**
  * Interface of blob service for storing short videos media ...
  */
@@ -22,6 +24,14 @@ public interface Blobs {
 	 */
 	Result<Void> upload(String blobId, byte[] bytes, String token);
 
+	/**
+	 * Uploads a short video blob resource as it streams in, without holding it in memory.
+	 * 
+	 * @return same as upload(blobId, bytes, token), or
+	 *         TOO_LARGE if the blob exceeds the maximum size
+	 */
+	Result<Void> upload(String blobId, InputStream bytes, String token);
+
 	/**
 	 * Downloads a short video blob resource in a single byte chunk of bytes.
 	 * 
@@ -31,6 +41,28 @@ public interface Blobs {
 	 */
 	Result<byte[]> download(String blobId, String token);
 
+	/**
+	 * Opens a short video blob resource for reading; the caller must close the stream.
+	 * 
+	 * @param blobId the id of the blob;
+	 * @return (OK, stream), if the blob exists;
+	 * 			 NOT_FOUND, if no blob matches the provided blobId
+	 */
+	Result<InputStream> downloadStream(String blobId, String token);
+
+	/**
+	 * Opens a range of a short video blob resource for reading, so that seeking a video
+	 * only fetches the bytes needed; the caller must close the stream.
+	 * 
+	 * @param offset the first byte, or if negative, the range is the last -offset bytes
+	 * @param length the number of bytes, or -1 for up to the end of the blob
+	 * @param ifVersion if not null, the range only applies if the blob still has this
+	 * 			version; otherwise the whole blob is returned
+	 * @return (OK, content), if the blob exists, with an empty range if it starts past the end;
+	 * 			 NOT_FOUND, if no blob matches the provided blobId
+	 */
+	Result<BlobContent> download(String blobId, long offset, long length, String ifVersion, String token);
+
 
 	/**
 	 * Deletes a short video blob resource.
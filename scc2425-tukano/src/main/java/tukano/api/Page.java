@@ -0,0 +1,53 @@
+package tukano.api;
+
+import java.util.List;
+
+/**
+ * One page of a (possibly long) list.
+ * 
+ * next is an opaque cursor to be passed back to obtain the following page,
+ * or null if this is the last page.
+ *
+ * @param <T> type of the items in the list
+ */
+public class Page<T> {
+
+	private List<T> items;
+	private String next;
+
+	public Page() {}
+
+	public Page(List<T> items, String next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	public void setItems(List<T> items) {
+		this.items = items;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	public void setNext(String next) {
+		this.next = next;
+	}
+
+	public List<T> items() {
+		return items;
+	}
+
+	public String next() {
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return "Page [items=" + items + ", next=" + next + "]";
+	}
+}
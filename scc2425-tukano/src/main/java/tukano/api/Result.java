@@ -22,8 +22,9 @@ public interface Result<T> {
 	 * CONFLICT - something is being created but already exists
 	 * NOT_FOUND - an access occurred to something that does not exist
 	 * INTERNAL_ERROR - something unexpected happened
+	 * TOO_LARGE - the request body exceeds the accepted size
 	 */
-	enum ErrorCode{ OK, CONFLICT, NOT_FOUND, BAD_REQUEST, FORBIDDEN, INTERNAL_ERROR, NOT_IMPLEMENTED, TIMEOUT};
+	enum ErrorCode{ OK, CONFLICT, NOT_FOUND, BAD_REQUEST, FORBIDDEN, INTERNAL_ERROR, NOT_IMPLEMENTED, TIMEOUT, TOO_LARGE};
 	
 	/**
 	 * Tests if the result is an error.
@@ -10,6 +10,9 @@ import java.util.List;
  * Users can follow other users to gain access to their short videos.
  * User can add or remove likes to short videos.
  * 
+ * Wherever a password is asked for, a session of the same user, from Users.login, is
+ * accepted instead.
+ * 
  * @author smd
  *
  */
@@ -58,6 +61,15 @@ public interface Shorts {
 	 * @return (OK, List<String>|empty list) or NOT_FOUND if the user does not exist
 	 */
 	Result<List<String>> getShorts( String userId );
+
+	/**
+	 * Paginated version of getShorts, ordered by shortId.
+	 * 
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the maximum number of items in the page (0 for the default)
+	 * @return (OK, Page<String>), NOT_FOUND if the user does not exist or BAD_REQUEST if the cursor is not valid
+	 */
+	Result<Page<String>> getShorts( String userId, String cursor, int limit );
 	
 	/**
 	 * Causes a user to follow the shorts of another user.
@@ -83,6 +95,15 @@ public interface Shorts {
 	 * FORBIDDEN if the password is incorrect
 	 */
 	Result<List<String>> followers(String userId, String password);
+
+	/**
+	 * Paginated version of followers, ordered by userId of the follower.
+	 * 
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the maximum number of items in the page (0 for the default)
+	 */
+	Result<Page<String>> followers(String userId, String password, String cursor, int limit);
+
 	/**
 	 * Adds or removes a like to a short
 	 * 
@@ -109,6 +130,14 @@ public interface Shorts {
 	 */
 	Result<List<String>> likes(String shortId, String password);
 
+	/**
+	 * Paginated version of likes, ordered by userId.
+	 * 
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the maximum number of items in the page (0 for the default)
+	 */
+	Result<Page<String>> likes(String shortId, String password, String cursor, int limit);
+
 
 	/**
 	 * Returns the feed of the user, sorted by age. The feed is the list of shorts made by
@@ -122,5 +151,13 @@ public interface Shorts {
 	 */
 	Result<List<String>> getFeed(String userId, String password);
 
+	/**
+	 * Paginated version of getFeed, newest shorts first.
+	 * 
+	 * @param cursor the next cursor of the previous page, or null for the first page
+	 * @param limit the maximum number of items in the page (0 for the default)
+	 */
+	Result<Page<String>> getFeed(String userId, String password, String cursor, int limit);
+
 	Result<Void> deleteAllShorts(String userId, String password, String token);
 }
@@ -24,6 +24,27 @@ public interface Users {
 	 *         NOT_FOUND - if no user exists with the provided userId
 	 */
 	Result<User> getUser(String userId, String pwd);
+
+	/**
+	 * Starts a session of the user, to be given instead of the password to the operations
+	 * of Shorts. Sessions expire, and end when the user logs out, changes or is deleted, on
+	 * every server connected to the cache when that happens.
+	 * @param userId - the userId of the user
+	 * @param pwd  - the password of the user
+	 * @return OK and the session token, if the userId exists and password matches the existing password;
+	 *         NOT_FOUND - otherwise
+	 */
+	Result<String> login(String userId, String pwd);
+
+	/**
+	 * Ends all the sessions of the user started until now, on every server connected to the
+	 * cache.
+	 * @param userId - the userId of the user
+	 * @param pwd  - the password of the user, or one of its sessions
+	 * @return OK, if the userId exists and the password or session is valid;
+	 *         NOT_FOUND - otherwise
+	 */
+	Result<Void> logout(String userId, String pwd);
 	
 	/**
 	 * Modifies the information of a user. Value of null, in any field of the user argument, means the field will remain as unchanged 
@@ -59,4 +80,14 @@ public interface Users {
 	 *         BAD_REQUEST - otherwise.
 	 */
 	Result<List<User>> searchUsers(String pattern);	
+
+	/**
+	 * Paginated version of searchUsers, ordered by userId.
+	 * 
+	 * @param pattern - substring to search
+	 * @param cursor - the next cursor of the previous page, or null for the first page
+	 * @param limit - the maximum number of users in the page (0 for the default)
+	 * @return OK and the page of users, BAD_REQUEST if the cursor is not valid
+	 */
+	Result<Page<User>> searchUsers(String pattern, String cursor, int limit);
 }
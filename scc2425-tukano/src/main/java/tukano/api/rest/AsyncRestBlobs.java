@@ -0,0 +1,46 @@
+package tukano.api.rest;
+
+import static tukano.api.rest.RestBlobs.*;
+
+import java.io.InputStream;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Same resources as {@link RestBlobs}, served asynchronously: the container thread is
+ * released while the request runs and the response is resumed when it completes.
+ * Needs a container with asynchronous request support.
+ */
+@Path(RestBlobs.PATH)
+public interface AsyncRestBlobs {
+
+ 	@POST
+ 	@Path("/{" + BLOB_ID +"}")
+ 	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
+	void upload(@PathParam(BLOB_ID) String blobId, InputStream bytes, @QueryParam(TOKEN) String token, @Suspended AsyncResponse ar);
+
+ 	@GET
+ 	@Path("/{" + BLOB_ID +"}") 	
+ 	@Produces(MediaType.APPLICATION_OCTET_STREAM)
+ 	void download(@PathParam(BLOB_ID) String blobId, @QueryParam(TOKEN) String token,
+ 			@HeaderParam(RANGE) String range, @HeaderParam(IF_RANGE) String ifRange, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + BLOB_ID + "}")
+	void delete(@PathParam(BLOB_ID) String blobId, @QueryParam(TOKEN) String token, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + USER_ID + "}/" + BLOBS)
+	void deleteAllBlobs(@PathParam(USER_ID) String userId, @QueryParam(TOKEN) String token, @Suspended AsyncResponse ar);
+}
@@ -0,0 +1,92 @@
+package tukano.api.rest;
+
+import static tukano.api.rest.RestShorts.*;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+
+/**
+ * Same resources as {@link RestShorts}, served asynchronously: the container thread is
+ * released while the request runs and the response is resumed when it completes.
+ * Needs a container with asynchronous request support.
+ */
+@Path(RestShorts.PATH)
+public interface AsyncRestShorts {
+
+	@POST
+	@Path("/{" + USER_ID + "}")
+	@Produces(MediaType.APPLICATION_JSON)
+    void createShort(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + SHORT_ID + "}")
+	void deleteShort(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + SHORT_ID + "}" )
+	@Produces(MediaType.APPLICATION_JSON)
+    void getShort(@PathParam(SHORT_ID) String shortId, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + SHORTS )
+	@Produces(MediaType.APPLICATION_JSON)
+	void getShorts(@PathParam(USER_ID) String userId, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + SHORTS + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	void getShortsPage(@PathParam(USER_ID) String userId, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit, @Suspended AsyncResponse ar);
+
+	@POST
+	@Path("/{" + USER_ID1 + "}/{" + USER_ID2 + "}" + FOLLOWERS )
+	@Consumes(MediaType.APPLICATION_JSON)
+	void follow(@PathParam(USER_ID1) String userId1, @PathParam(USER_ID2) String userId2, boolean isFollowing, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + FOLLOWERS )
+	@Produces(MediaType.APPLICATION_JSON)
+	void followers(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + FOLLOWERS + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	void followersPage(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit, @Suspended AsyncResponse ar);
+
+	@POST
+	@Path("/{" + SHORT_ID + "}/{" + USER_ID + "}" + LIKES )
+	@Consumes(MediaType.APPLICATION_JSON)
+	void like(@PathParam(SHORT_ID) String shortId, @PathParam(USER_ID) String userId, boolean isLiked,  @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + SHORT_ID + "}" + LIKES )
+	@Produces(MediaType.APPLICATION_JSON)
+	void likes(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + SHORT_ID + "}" + LIKES + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	void likesPage(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + FEED )
+	@Produces(MediaType.APPLICATION_JSON)
+	void getFeed( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + FEED + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	void getFeedPage( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + USER_ID + "}" + SHORTS)
+	void deleteAllShorts(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(TOKEN) String token, @Suspended AsyncResponse ar);
+}
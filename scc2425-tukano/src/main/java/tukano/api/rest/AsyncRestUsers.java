@@ -0,0 +1,65 @@
+package tukano.api.rest;
+
+import static tukano.api.rest.RestUsers.*;
+
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.PUT;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
+import jakarta.ws.rs.core.MediaType;
+import tukano.api.User;
+
+/**
+ * Same resources as {@link RestUsers}, served asynchronously: the container thread is
+ * released while the request runs and the response is resumed when it completes.
+ * Needs a container with asynchronous request support.
+ */
+@Path(RestUsers.PATH)
+public interface AsyncRestUsers {
+
+	@POST
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	void createUser(User user, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path("/{" + USER_ID+ "}")
+	@Produces(MediaType.APPLICATION_JSON)
+	void getUser(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd, @Suspended AsyncResponse ar);
+
+	@POST
+	@Path("/{" + USER_ID+ "}" + SESSION)
+	@Produces(MediaType.APPLICATION_JSON)
+	void login(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + USER_ID+ "}" + SESSION)
+	void logout(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd, @Suspended AsyncResponse ar);
+
+	@PUT
+	@Path("/{" + USER_ID+ "}")
+	@Consumes(MediaType.APPLICATION_JSON)
+	@Produces(MediaType.APPLICATION_JSON)
+	void updateUser(@PathParam( USER_ID ) String userId, @QueryParam( PWD ) String pwd, User user, @Suspended AsyncResponse ar);
+
+	@DELETE
+	@Path("/{" + USER_ID+ "}")
+	@Produces(MediaType.APPLICATION_JSON)
+	void deleteUser(@PathParam(USER_ID) String userId, @QueryParam(PWD) String pwd, @Suspended AsyncResponse ar);
+
+	@GET
+	@Produces(MediaType.APPLICATION_JSON)
+	void searchUsers(@QueryParam(QUERY) String pattern, @Suspended AsyncResponse ar);
+
+	@GET
+	@Path(SEARCH + PAGE)
+	@Produces(MediaType.APPLICATION_JSON)
+	void searchUsersPage(@QueryParam(QUERY) String pattern, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit, @Suspended AsyncResponse ar);
+}
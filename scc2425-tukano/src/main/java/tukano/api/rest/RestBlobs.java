@@ -1,15 +1,18 @@
 package tukano.api.rest;
 
+import java.io.InputStream;
 
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 
 @Path(RestBlobs.PATH)
 public interface RestBlobs {
@@ -19,17 +22,20 @@ public interface RestBlobs {
 	String TOKEN = "token";
 	String BLOBS = "blobs";
 	String USER_ID = "userId";
+	String RANGE = "Range";
+	String IF_RANGE = "If-Range";
 
  	@POST
  	@Path("/{" + BLOB_ID +"}")
  	@Consumes(MediaType.APPLICATION_OCTET_STREAM)
-	void upload(@PathParam(BLOB_ID) String blobId, byte[] bytes, @QueryParam(TOKEN) String token);
+	void upload(@PathParam(BLOB_ID) String blobId, InputStream bytes, @QueryParam(TOKEN) String token);
 
 
  	@GET
  	@Path("/{" + BLOB_ID +"}") 	
  	@Produces(MediaType.APPLICATION_OCTET_STREAM)
- 	byte[] download(@PathParam(BLOB_ID) String blobId, @QueryParam(TOKEN) String token);
+ 	Response download(@PathParam(BLOB_ID) String blobId, @QueryParam(TOKEN) String token,
+ 			@HeaderParam(RANGE) String range, @HeaderParam(IF_RANGE) String ifRange);
  	
  	
 	@DELETE
@@ -11,6 +11,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.Short;
 
 @Path(RestShorts.PATH)
@@ -28,6 +29,9 @@ public interface RestShorts {
 	String LIKES = "/likes";
 	String SHORTS = "/shorts";
 	String FOLLOWERS = "/followers";
+	String PAGE = "/page";
+	String CURSOR = "cursor";
+	String LIMIT = "limit";
 	
 	@POST
 	@Path("/{" + USER_ID + "}")
@@ -48,6 +52,11 @@ public interface RestShorts {
 	@Produces(MediaType.APPLICATION_JSON)
 	List<String> getShorts(@PathParam(USER_ID) String userId);
 
+	@GET
+	@Path("/{" + USER_ID + "}" + SHORTS + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	Page<String> getShortsPage(@PathParam(USER_ID) String userId, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit);
+
 	@POST
 	@Path("/{" + USER_ID1 + "}/{" + USER_ID2 + "}" + FOLLOWERS )
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -58,6 +67,11 @@ public interface RestShorts {
 	@Produces(MediaType.APPLICATION_JSON)
 	List<String> followers(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password);
 
+	@GET
+	@Path("/{" + USER_ID + "}" + FOLLOWERS + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	Page<String> followersPage(@PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit);
+
 	@POST
 	@Path("/{" + SHORT_ID + "}/{" + USER_ID + "}" + LIKES )
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -68,10 +82,20 @@ public interface RestShorts {
 	@Produces(MediaType.APPLICATION_JSON)
 	List<String> likes(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password);
 
+	@GET
+	@Path("/{" + SHORT_ID + "}" + LIKES + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	Page<String> likesPage(@PathParam(SHORT_ID) String shortId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit);
+
 	@GET
 	@Path("/{" + USER_ID + "}" + FEED )
 	@Produces(MediaType.APPLICATION_JSON)
 	List<String> getFeed( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password);
+
+	@GET
+	@Path("/{" + USER_ID + "}" + FEED + PAGE )
+	@Produces(MediaType.APPLICATION_JSON)
+	Page<String> getFeedPage( @PathParam(USER_ID) String userId, @QueryParam(PWD) String password, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit);
 	
 	@DELETE
 	@Path("/{" + USER_ID + "}" + SHORTS)
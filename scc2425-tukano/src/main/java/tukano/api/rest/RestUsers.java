@@ -12,6 +12,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.User;
 
 @Path(RestUsers.PATH)
@@ -22,6 +23,11 @@ public interface RestUsers {
 	String PWD = "pwd";
 	String QUERY = "query";
 	String USER_ID = "userId";
+	String SEARCH = "/search";
+	String PAGE = "/page";
+	String CURSOR = "cursor";
+	String LIMIT = "limit";
+	String SESSION = "/session";
 	
 	@POST
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -35,6 +41,17 @@ public interface RestUsers {
 	User getUser(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd);
 	
 	
+	@POST
+	@Path("/{" + USER_ID+ "}" + SESSION)
+	@Produces(MediaType.APPLICATION_JSON)
+	String login(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd);
+	
+	
+	@DELETE
+	@Path("/{" + USER_ID+ "}" + SESSION)
+	void logout(@PathParam(USER_ID) String userId, @QueryParam( PWD ) String pwd);
+	
+	
 	@PUT
 	@Path("/{" + USER_ID+ "}")
 	@Consumes(MediaType.APPLICATION_JSON)
@@ -51,4 +68,9 @@ public interface RestUsers {
 	@GET
 	@Produces(MediaType.APPLICATION_JSON)
 	List<User> searchUsers(@QueryParam(QUERY) String pattern);	
+
+	@GET
+	@Path(SEARCH + PAGE)
+	@Produces(MediaType.APPLICATION_JSON)
+	Page<User> searchUsersPage(@QueryParam(QUERY) String pattern, @QueryParam(CURSOR) String cursor, @QueryParam(LIMIT) int limit);
 }
@@ -0,0 +1,133 @@
+package tukano.impl;
+
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.TIMEOUT;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import tukano.api.BlobContent;
+import tukano.api.Result;
+import utils.Metrics;
+
+/**
+ * Runs blocking service calls (JDBC, Redis, blob storage) on dedicated I/O executors and
+ * returns their results as CompletionStages.
+ *
+ * Blob transfers run on an executor of their own (ASYNC_TRANSFER_THREADS), so that many slow
+ * uploads and downloads cannot hold up the ordinary operations (ASYNC_IO_THREADS). Both
+ * queues are bounded (ASYNC_TRANSFER_QUEUE, ASYNC_IO_QUEUE); when one is full, the call is
+ * rejected at once with TIMEOUT instead of waiting behind the backlog.
+ *
+ * Every call has a deadline: ASYNC_TIMEOUT_MS for ordinary operations and
+ * ASYNC_TRANSFER_TIMEOUT_MS for blob transfers. When it expires the stage completes with
+ * TIMEOUT; a call that has not started by then never runs. A running call is not
+ * interrupted, so that JDBC connections and Redis resources are always given back, but a
+ * transfer can be given the stream it reads, which is then closed to make it stop.
+ *
+ * A call that timed out while running still finishes: a write may take effect after its
+ * caller was told TIMEOUT (the blob writes are idempotent, so retrying them is safe), and a
+ * stream or range it opens for the caller is closed as soon as it is returned.
+ */
+public class Async {
+	private static final Logger Log = Logger.getLogger(Async.class.getName());
+
+	private static final int IO_THREADS = Integer.getInteger("ASYNC_IO_THREADS", 64);
+	private static final int IO_QUEUE = Integer.getInteger("ASYNC_IO_QUEUE", 1000);
+	private static final int TRANSFER_THREADS = Integer.getInteger("ASYNC_TRANSFER_THREADS", 32);
+	private static final int TRANSFER_QUEUE = Integer.getInteger("ASYNC_TRANSFER_QUEUE", 64);
+	private static final long TIMEOUT_MS = Long.getLong("ASYNC_TIMEOUT_MS", 10000);
+	private static final long TRANSFER_TIMEOUT_MS = Long.getLong("ASYNC_TRANSFER_TIMEOUT_MS", 120000);
+
+	private static final ExecutorService io = newExecutor("async-io", IO_THREADS, IO_QUEUE);
+	private static final ExecutorService transfers = newExecutor("async-transfer", TRANSFER_THREADS, TRANSFER_QUEUE);
+
+	private Async() {
+	}
+
+	public static <T> CompletionStage<Result<T>> call(Supplier<Result<T>> op) {
+		return call(op, TIMEOUT_MS);
+	}
+
+	public static <T> CompletionStage<Result<T>> call(Supplier<Result<T>> op, long timeoutMillis) {
+		return run(io, op, timeoutMillis, null);
+	}
+
+	public static <T> CompletionStage<Result<T>> transfer(Supplier<Result<T>> op) {
+		return run(transfers, op, TRANSFER_TIMEOUT_MS, null);
+	}
+
+	/**
+	 * As transfer(op), closing source if the deadline expires, so that the transfer stops
+	 * reading it (e.g., the body of an upload whose client was already answered).
+	 */
+	public static <T> CompletionStage<Result<T>> transfer(Supplier<Result<T>> op, Closeable source) {
+		return run(transfers, op, TRANSFER_TIMEOUT_MS, source);
+	}
+
+	// The result either of the call or, if the deadline expires first, of its timeout: a
+	// late result of the call is discarded, closing what it opened.
+	private static <T> CompletionStage<Result<T>> run(ExecutorService executor, Supplier<Result<T>> op, long timeoutMillis, Closeable source) {
+		var result = new CompletableFuture<Result<T>>();
+		Result<T> timedOut = Result.error(TIMEOUT);
+		try {
+			CompletableFuture.supplyAsync(() -> result.isDone() ? null : op.get(), executor).whenComplete((res, x) -> {
+				if (x != null) {
+					Log.warning("Async operation failed: " + x.getMessage());
+					res = Result.error(INTERNAL_ERROR);
+				}
+				if (!result.complete(res) && res != null)
+					discard(res);
+			});
+		} catch (RejectedExecutionException x) {
+			Metrics.counter("async.rejected").increment();
+			return CompletableFuture.completedFuture(Result.error(TIMEOUT));
+		}
+		return result.completeOnTimeout(timedOut, timeoutMillis, TimeUnit.MILLISECONDS).whenComplete((res, x) -> {
+			if (res != timedOut)
+				return;
+			Metrics.counter("async.timeouts").increment();
+			if (source != null)
+				close(source);
+		});
+	}
+
+	private static void discard(Result<?> res) {
+		if (!res.isOK())
+			return;
+		if (res.value() instanceof Closeable c)
+			close(c);
+		else if (res.value() instanceof BlobContent content)
+			close(content.stream());
+	}
+
+	private static void close(Closeable c) {
+		try {
+			c.close();
+		} catch (IOException | RuntimeException x) {
+			Log.fine("Unable to close the stream of a call that timed out: " + x.getMessage());
+		}
+	}
+
+	private static ExecutorService newExecutor(String name, int threads, int queue) {
+		var counter = new AtomicInteger();
+		var pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), r -> {
+			var t = new Thread(r, name + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		Metrics.gauge(name + ".queued", () -> pool.getQueue().size());
+		Metrics.gauge(name + ".active", pool::getActiveCount);
+		return pool;
+	}
+}
@@ -0,0 +1,65 @@
+package tukano.impl;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+
+import tukano.api.AsyncBlobs;
+import tukano.api.BlobContent;
+import tukano.api.Blobs;
+import tukano.api.Result;
+
+/**
+ * AsyncBlobs on top of JavaBlobs: each call runs on an I/O executor of {@link Async},
+ * so the caller's thread is never blocked on JDBC, Redis or blob storage.
+ */
+public class AsyncJavaBlobs implements AsyncBlobs {
+
+	private static AsyncJavaBlobs instance;
+
+	private final Blobs impl;
+
+	synchronized public static AsyncJavaBlobs getInstance() {
+		if (instance == null)
+			instance = new AsyncJavaBlobs();
+		return instance;
+	}
+
+	private AsyncJavaBlobs() {
+		impl = JavaBlobs.getInstance();
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> upload(String blobId, byte[] bytes, String token) {
+		return Async.transfer(() -> impl.upload(blobId, bytes, token));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> upload(String blobId, InputStream bytes, String token) {
+		return Async.transfer(() -> impl.upload(blobId, bytes, token), bytes);
+	}
+
+	@Override
+	public CompletionStage<Result<byte[]>> download(String blobId, String token) {
+		return Async.transfer(() -> impl.download(blobId, token));
+	}
+
+	@Override
+	public CompletionStage<Result<InputStream>> downloadStream(String blobId, String token) {
+		return Async.call(() -> impl.downloadStream(blobId, token));
+	}
+
+	@Override
+	public CompletionStage<Result<BlobContent>> download(String blobId, long offset, long length, String ifVersion, String token) {
+		return Async.call(() -> impl.download(blobId, offset, length, ifVersion, token));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> delete(String blobId, String token) {
+		return Async.transfer(() -> impl.delete(blobId, token));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> deleteAllBlobs(String userId, String token) {
+		return Async.transfer(() -> impl.deleteAllBlobs(userId, token));
+	}
+}
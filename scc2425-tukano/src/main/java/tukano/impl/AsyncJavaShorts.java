@@ -0,0 +1,101 @@
+package tukano.impl;
+
+import java.util.concurrent.CompletionStage;
+import java.util.List;
+
+import tukano.api.AsyncShorts;
+import tukano.api.Page;
+import tukano.api.Result;
+import tukano.api.Short;
+import tukano.api.Shorts;
+
+/**
+ * AsyncShorts on top of JavaShorts: each call runs on the I/O executor of {@link Async},
+ * so the caller's thread is never blocked on JDBC, Redis or blob storage.
+ */
+public class AsyncJavaShorts implements AsyncShorts {
+
+	private static AsyncJavaShorts instance;
+
+	private final Shorts impl;
+
+	synchronized public static AsyncJavaShorts getInstance() {
+		if (instance == null)
+			instance = new AsyncJavaShorts();
+		return instance;
+	}
+
+	private AsyncJavaShorts() {
+		impl = JavaShorts.getInstance();
+	}
+
+	@Override
+	public CompletionStage<Result<Short>> createShort(String userId, String password) {
+		return Async.call(() -> impl.createShort(userId, password));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> deleteShort(String shortId, String password) {
+		return Async.call(() -> impl.deleteShort(shortId, password));
+	}
+
+	@Override
+	public CompletionStage<Result<Short>> getShort(String shortId) {
+		return Async.call(() -> impl.getShort(shortId));
+	}
+
+	@Override
+	public CompletionStage<Result<List<String>>> getShorts(String userId) {
+		return Async.call(() -> impl.getShorts(userId));
+	}
+
+	@Override
+	public CompletionStage<Result<Page<String>>> getShorts(String userId, String cursor, int limit) {
+		return Async.call(() -> impl.getShorts(userId, cursor, limit));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> follow(String userId1, String userId2, boolean isFollowing, String password) {
+		return Async.call(() -> impl.follow(userId1, userId2, isFollowing, password));
+	}
+
+	@Override
+	public CompletionStage<Result<List<String>>> followers(String userId, String password) {
+		return Async.call(() -> impl.followers(userId, password));
+	}
+
+	@Override
+	public CompletionStage<Result<Page<String>>> followers(String userId, String password, String cursor, int limit) {
+		return Async.call(() -> impl.followers(userId, password, cursor, limit));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> like(String shortId, String userId, boolean isLiked, String password) {
+		return Async.call(() -> impl.like(shortId, userId, isLiked, password));
+	}
+
+	@Override
+	public CompletionStage<Result<List<String>>> likes(String shortId, String password) {
+		return Async.call(() -> impl.likes(shortId, password));
+	}
+
+	@Override
+	public CompletionStage<Result<Page<String>>> likes(String shortId, String password, String cursor, int limit) {
+		return Async.call(() -> impl.likes(shortId, password, cursor, limit));
+	}
+
+	@Override
+	public CompletionStage<Result<List<String>>> getFeed(String userId, String password) {
+		return Async.call(() -> impl.getFeed(userId, password));
+	}
+
+	@Override
+	public CompletionStage<Result<Page<String>>> getFeed(String userId, String password, String cursor, int limit) {
+		return Async.call(() -> impl.getFeed(userId, password, cursor, limit));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> deleteAllShorts(String userId, String password, String token) {
+		return Async.call(() -> impl.deleteAllShorts(userId, password, token));
+	}
+}
@@ -0,0 +1,71 @@
+package tukano.impl;
+
+import java.util.concurrent.CompletionStage;
+import java.util.List;
+
+import tukano.api.AsyncUsers;
+import tukano.api.Page;
+import tukano.api.Result;
+import tukano.api.User;
+import tukano.api.Users;
+
+/**
+ * AsyncUsers on top of JavaUsers: each call runs on the I/O executor of {@link Async},
+ * so the caller's thread is never blocked on JDBC, Redis or blob storage.
+ */
+public class AsyncJavaUsers implements AsyncUsers {
+
+	private static AsyncJavaUsers instance;
+
+	private final Users impl;
+
+	synchronized public static AsyncJavaUsers getInstance() {
+		if (instance == null)
+			instance = new AsyncJavaUsers();
+		return instance;
+	}
+
+	private AsyncJavaUsers() {
+		impl = JavaUsers.getInstance();
+	}
+
+	@Override
+	public CompletionStage<Result<String>> createUser(User user) {
+		return Async.call(() -> impl.createUser(user));
+	}
+
+	@Override
+	public CompletionStage<Result<User>> getUser(String userId, String pwd) {
+		return Async.call(() -> impl.getUser(userId, pwd));
+	}
+
+	@Override
+	public CompletionStage<Result<String>> login(String userId, String pwd) {
+		return Async.call(() -> impl.login(userId, pwd));
+	}
+
+	@Override
+	public CompletionStage<Result<Void>> logout(String userId, String pwd) {
+		return Async.call(() -> impl.logout(userId, pwd));
+	}
+
+	@Override
+	public CompletionStage<Result<User>> updateUser(String userId, String pwd, User user) {
+		return Async.call(() -> impl.updateUser(userId, pwd, user));
+	}
+
+	@Override
+	public CompletionStage<Result<User>> deleteUser(String userId, String pwd) {
+		return Async.call(() -> impl.deleteUser(userId, pwd));
+	}
+
+	@Override
+	public CompletionStage<Result<List<User>>> searchUsers(String pattern) {
+		return Async.call(() -> impl.searchUsers(pattern));
+	}
+
+	@Override
+	public CompletionStage<Result<Page<User>>> searchUsers(String pattern, String cursor, int limit) {
+		return Async.call(() -> impl.searchUsers(pattern, cursor, limit));
+	}
+}
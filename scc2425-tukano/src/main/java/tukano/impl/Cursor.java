@@ -0,0 +1,84 @@
+package tukano.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursors for paginated listings.
+ * 
+ * A cursor encodes the sort key of the last item of a page, so the next page is
+ * obtained with an index-backed "WHERE key > cursor ORDER BY key LIMIT n" query,
+ * no matter how deep in the list it is.
+ */
+public class Cursor {
+
+	public static final int DEFAULT_PAGE_SIZE = Integer.getInteger("PAGE_SIZE", 50);
+	public static final int MAX_PAGE_SIZE = Integer.getInteger("MAX_PAGE_SIZE", 500);
+
+	private static final char SEPARATOR = '|';
+
+	/**
+	 * A (timestamp, id) position, for listings ordered by time and then by id.
+	 */
+	public static record Keyset(long timestamp, String id) {
+	}
+
+	public static String of(String id) {
+		return encode(id);
+	}
+
+	public static String of(long timestamp, String id) {
+		return encode(Long.toString(timestamp) + SEPARATOR + id);
+	}
+
+	/**
+	 * @return the id encoded in the cursor, "" for the first page, or null if the cursor is malformed
+	 */
+	public static String id(String cursor) {
+		if (cursor == null || cursor.isEmpty())
+			return "";
+		return decode(cursor);
+	}
+
+	/**
+	 * @return the keyset encoded in the cursor, or null if it is absent or malformed
+	 */
+	public static Keyset keyset(String cursor) {
+		var s = cursor == null || cursor.isEmpty() ? null : decode(cursor);
+		if (s == null)
+			return null;
+		var i = s.indexOf(SEPARATOR);
+		if (i <= 0)
+			return null;
+		try {
+			return new Keyset(Long.parseLong(s, 0, i, 10), s.substring(i + 1));
+		} catch (NumberFormatException x) {
+			return null;
+		}
+	}
+
+	public static boolean isFirst(String cursor) {
+		return cursor == null || cursor.isEmpty();
+	}
+
+	/**
+	 * Clamps a requested page size; 0 (or a missing parameter) means the default size.
+	 */
+	public static int pageSize(int limit) {
+		if (limit <= 0)
+			return DEFAULT_PAGE_SIZE;
+		return Math.min(limit, MAX_PAGE_SIZE);
+	}
+
+	private static String encode(String s) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String decode(String cursor) {
+		try {
+			return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException x) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package tukano.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import utils.Hash;
+import utils.Metrics;
+
+/**
+ * Passwords that recently failed for each user, so that a client retrying the same wrong
+ * password is turned away without looking the user up again.
+ *
+ * Remembers at most FAILED_LOGINS_PER_USER passwords (hashed) for each of the last
+ * FAILED_LOGINS_MAX_USERS users, for FAILED_LOGINS_TTL_SECONDS. The passwords of a user are
+ * forgotten whenever the user changes, which the near cache of users reports for all nodes.
+ *
+ * Exposes the metrics users.login.failed and users.login.repeated.
+ */
+final class FailedLogins {
+
+	private static final int MAX_USERS = Integer.getInteger("FAILED_LOGINS_MAX_USERS", 10000);
+	private static final int PER_USER = Integer.getInteger("FAILED_LOGINS_PER_USER", 8);
+	private static final long TTL = Long.getLong("FAILED_LOGINS_TTL_SECONDS", 60);
+
+	// Per user, the hashes of the failed passwords and when they expire.
+	private final Map<String, Map<String, Long>> failed = new LinkedHashMap<>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Map<String, Long>> eldest) {
+			return size() > MAX_USERS;
+		}
+	};
+
+	boolean isKnownBad(String userId, String pwd) {
+		var hash = Hash.of(userId + "/" + pwd);
+		synchronized (failed) {
+			var pwds = failed.get(userId);
+			var expires = pwds != null ? pwds.get(hash) : null;
+			if (expires == null)
+				return false;
+			if (expires < System.currentTimeMillis()) {
+				pwds.remove(hash);
+				return false;
+			}
+		}
+		Metrics.counter("users.login.repeated").increment();
+		return true;
+	}
+
+	void failed(String userId, String pwd) {
+		Metrics.counter("users.login.failed").increment();
+		var hash = Hash.of(userId + "/" + pwd);
+		long now = System.currentTimeMillis();
+		synchronized (failed) {
+			var pwds = failed.computeIfAbsent(userId, __ -> new HashMap<>());
+			if (pwds.size() >= PER_USER) {
+				pwds.values().removeIf(expires -> expires < now);
+				if (pwds.size() >= PER_USER)
+					return;
+			}
+			pwds.put(hash, now + TTL * 1000);
+		}
+	}
+
+	/**
+	 * @param userId the user that changed, or null to forget all users
+	 */
+	void forget(String userId) {
+		synchronized (failed) {
+			if (userId == null)
+				failed.clear();
+			else
+				failed.remove(userId);
+		}
+	}
+}
@@ -3,39 +3,52 @@ package tukano.impl;
 import static java.lang.String.format;
 import static tukano.api.Result.error;
 import static tukano.api.Result.ErrorCode.FORBIDDEN;
-import static tukano.api.Result.ErrorCode.CONFLICT;
 import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
-import static tukano.api.Result.ErrorCode.NOT_FOUND;
 import static tukano.api.Result.ok;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.logging.Logger;
 
-
-import com.azure.core.util.BinaryData;
-import com.azure.storage.blob.BlobClient;
-import com.azure.storage.blob.BlobContainerClient;
-import com.azure.storage.blob.BlobContainerClientBuilder;
-
+import cache.BlobCache;
+import cache.OffHeapCache;
 import cache.RedisCache;
+import cache.SingleFlight;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.exceptions.JedisException;
+import tukano.api.BlobContent;
 import tukano.api.Blobs;
 import tukano.api.Result;
 
 import tukano.impl.rest.TukanoRestServer;
-import utils.Hash;
-import utils.Hex;
-import utils.JSON;
+import tukano.impl.storage.AzureBlobStorage;
+import tukano.impl.storage.BlobStorage;
+import tukano.impl.storage.FilesystemStorage;
+import tukano.impl.storage.Ranges;
+import tukano.impl.storage.TieredBlobStorage;
+import utils.ByteBufferInputStream;
+import utils.IO;
 
 public class JavaBlobs implements Blobs {
 	
 	private static Blobs instance;
 	private static final Logger Log = Logger.getLogger(JavaBlobs.class.getName());
 	private static final String BlobStoreConnection = System.getProperty("BlobStoreConnection");
+	private static final String HOT_DIR = System.getProperty("BLOB_HOT_DIR", "/tmp/tukano-hot");
+	private static final long MAX_BLOB_BYTES = Long.getLong("BLOB_MAX_BYTES", 256L * 1024 * 1024);
+	private static final String DELETED_BLOBS = "deleted_blobs:";
+	private static final long DELETED_BLOBS_TTL = 24 * 3600;
 
 	public String baseURI;
-	private final BlobContainerClient containerClient;
+	private final BlobStorage storage;
+	private final BlobCache cache = new BlobCache();
+	private final SingleFlight<String, Result<OffHeapCache.Entry>> fetches = new SingleFlight<>("blobs.fetch");
 
 	synchronized public static Blobs getInstance() {
 		if( instance == null )
@@ -46,76 +59,76 @@ public class JavaBlobs implements Blobs {
 	private JavaBlobs() {
 		baseURI = format("%s/%s/", TukanoRestServer.serverURI, Blobs.NAME);
 
-		containerClient = new BlobContainerClientBuilder()
-				.connectionString(BlobStoreConnection)
-				.containerName(Blobs.NAME)
-				.buildClient();
+		// BLOB_STORAGE: azure (default), filesystem or tiered (local disk in front of azure)
+		storage = switch (System.getProperty("BLOB_STORAGE", "azure")) {
+		case "filesystem" -> new FilesystemStorage();
+		case "tiered" -> new TieredBlobStorage(new FilesystemStorage(HOT_DIR), new AzureBlobStorage(BlobStoreConnection, Blobs.NAME));
+		default -> new AzureBlobStorage(BlobStoreConnection, Blobs.NAME);
+		};
 	}
 	
 	@Override
 public Result<Void> upload(String blobId, byte[] data, String token) {
 
+    return upload(blobId, new ByteArrayInputStream(data), token);
+}
+
+// Streams the blob into storage, hashing it on the way; at most MAX_BLOB_BYTES are accepted.
+@Override
+public Result<Void> upload(String blobId, InputStream data, String token) {
 
     if (!isBlobIdValid(blobId, token)) {
         return error(FORBIDDEN);
     }
 
-    try {
-        BlobClient bc = containerClient.getBlobClient(blobId);
-        BinaryData bdata = BinaryData.fromBytes(data);
+    return storage.write(blobId, data, MAX_BLOB_BYTES);
+}
 
-        if (bc.exists()) {
-            byte[] currentData = bc.downloadContent().toBytes();
+@Override
+public Result<byte[]> download(String blobId, String token) {
+   
 
-            if (Hex.of(Hash.sha256(currentData)).equals(Hex.of(Hash.sha256(data)))) {
-              
-                return Result.ok();
-            } else {
-               
-                return error(CONFLICT);
-            }
-        } else {
-            bc.upload(bdata);
-            cacheBlobData(blobId, bdata);
-         
-            return Result.ok();
-        }
-    } catch (Exception e) {
-      
+    if (!isBlobIdValid(blobId, token)) {
+        return error(FORBIDDEN);
+    }
+
+    var res = read(blobId, 0, -1);
+    if (!res.isOK()) {
+        return error(res.error());
+    }
+
+    try (var in = res.value().stream()) {
+        return ok(in.readAllBytes());
+    } catch (IOException e) {
+        Log.severe("Download error: " + e.getMessage());
         return error(INTERNAL_ERROR);
     }
 }
 
 @Override
-public Result<byte[]> download(String blobId, String token) {
-   
+public Result<InputStream> downloadStream(String blobId, String token) {
 
     if (!isBlobIdValid(blobId, token)) {
         return error(FORBIDDEN);
     }
 
-    try {
-        // Attempt to retrieve cached data
-        BinaryData cachedData = getCachedBytes(blobId);
-        if (cachedData != null) {
-            return ok(cachedData.toBytes());
-        }
+    var res = read(blobId, 0, -1);
+    return res.isOK() ? ok(res.value().stream()) : error(res.error());
+}
 
-        BlobClient bc = containerClient.getBlobClient(blobId);
+@Override
+public Result<BlobContent> download(String blobId, long offset, long length, String ifVersion, String token) {
 
-        // Download blob data if it exists
-        if (bc.exists()) {
-            byte[] content = bc.downloadContent().toBytes();
-        
-            return Result.ok(content);
-        } else {
-          
-            return error(NOT_FOUND);
-        }
-    } catch (Exception e) {
-        Log.severe("Download error: " + e.getMessage());
-        return error(INTERNAL_ERROR);
+    if (!isBlobIdValid(blobId, token)) {
+        return error(FORBIDDEN);
+    }
+
+    var res = read(blobId, offset, length);
+    if (res.isOK() && ifVersion != null && res.value().isPartial() && !ifVersion.equals(res.value().version())) {
+        IO.close(res.value().stream());
+        return read(blobId, 0, -1);
     }
+    return res;
 }
 
 @Override
@@ -126,23 +139,10 @@ public Result<Void> delete(String blobId, String token) {
         return error(FORBIDDEN);
     }
 
-    try {
-        BlobClient bc = containerClient.getBlobClient(blobId);
-
-        // Check if the blob exists before attempting deletion
-        if (bc.exists()) {
-            bc.delete();
-			clearCachedBlob(blobId);
-          
-            return Result.ok();
-        } else {
-          
-            return error(NOT_FOUND);
-        }
-    } catch (Exception e) {
-        Log.severe("Error during deletion: " + e.getMessage());
-        return error(INTERNAL_ERROR);
-    }
+    var res = storage.delete(blobId);
+    if (res.isOK())
+        cache.remove(blobId);
+    return res;
 }
 
 
@@ -155,67 +155,116 @@ public Result<Void> deleteAllBlobs(String userId, String token) {
         return error(FORBIDDEN);
     }
 
-    List<String> blobIds = JavaShorts.getInstance().getShorts(userId).value();
+    var shorts = JavaShorts.getInstance().getShorts(userId);
+    if (!shorts.isOK()) {
+        return error(shorts.error());
+    }
 
-    for (String blobId : blobIds) {
-        try {
-            BlobClient bc = containerClient.getBlobClient(blobId);
+    // Skips the blobs already deleted by a previous, partially failed, call.
+    var deleted = deletedBlobs(userId);
+    var pending = shorts.value().stream().filter(id -> !deleted.contains(id)).toList();
 
-            if (bc.exists()) {
-                bc.delete();
-                clearCachedBlob(blobId);
-                Log.info(() -> format("Deleted blob: %s", blobId));
-            }
-        } catch (Exception e) {
-        
-            return error(INTERNAL_ERROR);
-        }
+    var failed = storage.deleteAll(pending);
+    cache.removeAll(pending);
+
+    if (failed.isEmpty()) {
+        Log.info(() -> format("Deleted %d blobs of user %s", pending.size(), userId));
+        clearDeletedBlobs(userId);
+        return Result.ok();
     }
 
-    return Result.ok();
+    Log.warning(format("Unable to delete %d of %d blobs of user %s: %s", failed.size(), pending.size(), userId, failed));
+    var done = new ArrayList<>(pending);
+    done.removeAll(new HashSet<>(failed));
+    saveDeletedBlobs(userId, done);
+    return error(INTERNAL_ERROR);
 }
 
-private boolean isBlobIdValid(String blobId, String token) {		
-    return Token.isValid(token, blobId);
+private Set<String> deletedBlobs(String userId) {
+    try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+        return jedis.smembers(DELETED_BLOBS + userId);
+    } catch (JedisException e) {
+        Log.warning("Unable to read the blobs deleted for user " + userId + ": " + e.getMessage());
+        return Set.of();
+    }
 }
 
-	
-private void cacheBlobData(String blobId, BinaryData data) {
-    try (Jedis jed = RedisCache.getCachePool().getResource()) {
-        jed.set("bytes:" + blobId, JSON.encode(data));
-        
+private void saveDeletedBlobs(String userId, List<String> blobIds) {
+    if (blobIds.isEmpty()) {
+        return;
+    }
+    try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+        var pipeline = jedis.pipelined();
+        pipeline.sadd(DELETED_BLOBS + userId, blobIds.toArray(String[]::new));
+        pipeline.expire(DELETED_BLOBS + userId, DELETED_BLOBS_TTL);
+        pipeline.sync();
     } catch (JedisException e) {
-    
+        Log.warning("Unable to save the blobs deleted for user " + userId + ": " + e.getMessage());
     }
 }
 
+private void clearDeletedBlobs(String userId) {
+    try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+        jedis.del(DELETED_BLOBS + userId);
+    } catch (JedisException e) {
+        Log.warning("Unable to clear the blobs deleted for user " + userId + ": " + e.getMessage());
+    }
+}
 
-	
+private boolean isBlobIdValid(String blobId, String token) {		
+    return Token.isValid(token, blobId);
+}
 
+	
+/**
+ * Small blobs are served from the cache, and loaded into it on a miss, with concurrent
+ * misses of the same blob sharing a single fetch; larger ones are streamed from storage.
+ */
+private Result<BlobContent> read(String blobId, long offset, long length) {
+    if (cache.isCacheable(blobId)) {
+        var cached = cache.get(blobId);
+        if (cached == null) {
+            var res = fetches.run(blobId, () -> fetch(blobId));
+            if (!res.isOK()) {
+                return error(res.error());
+            }
+            cached = res.value();
+        }
+        if (cached != null) {
+            return ok(slice(cached, offset, length));
+        }
+    }
+    return storage.open(blobId, offset, length);
+}
 
+// Returns null if the blob is too large to be cached.
+private Result<OffHeapCache.Entry> fetch(String blobId) {
+    var res = storage.open(blobId, 0, -1);
+    if (!res.isOK()) {
+        return error(res.error());
+    }
 
-	private BinaryData getCachedBytes(String blobId) {
-		try (Jedis jed = RedisCache.getCachePool().getResource()) {
-			String cachedDataJson = jed.get("bytes:" + blobId);
-			// Verifica se há dados em cache
-			if (cachedDataJson != null) {
-				Log.info(() -> format("Cache hit for blobId: %s", blobId));
-				return JSON.decode(cachedDataJson, BinaryData.class);
-			} else {
-				Log.info(() -> format("Cache miss for blobId: %s", blobId));
-			}
-		} catch (JedisException e) {
-			Log.warning("Redis access failed, unable to retrieve cached blob for ID " + blobId + ": " + e.getMessage());
-		}
-		return null;
-	}
+    var content = res.value();
+    try (var in = content.stream()) {
+        if (content.size() > BlobCache.MAX_ENTRY_BYTES) {
+            cache.markUncacheable(blobId);
+            return ok(null);
+        }
+        var data = in.readAllBytes();
+        cache.put(blobId, data, content.version());
+        return ok(new OffHeapCache.Entry(ByteBuffer.wrap(data).asReadOnlyBuffer(), content.version(), 0));
+    } catch (IOException e) {
+        Log.severe("Unable to fetch blob " + blobId + ": " + e.getMessage());
+        return error(INTERNAL_ERROR);
+    }
+}
 
-	private void clearCachedBlob(String blobId) {
-		try (Jedis jed = RedisCache.getCachePool().getResource()) {
-			jed.del("bytes:" + blobId);
-			Log.info(() -> format("Cleared cached data for blobId: %s", blobId));
-		} catch (JedisException e) {
-			Log.warning("Failed to clear cached data in Redis for blobId " + blobId + ": " + e.getMessage());
-		}
-	}}
-	
+private static BlobContent slice(OffHeapCache.Entry cached, long offset, long length) {
+    var data = cached.data().duplicate();
+    long size = data.remaining();
+    long start = Ranges.start(offset, size);
+    long count = Ranges.count(start, length, size);
+    data.position((int) start).limit((int) (start + count));
+    return new BlobContent(new ByteBufferInputStream(data), start, count, size, cached.version());
+}
+}
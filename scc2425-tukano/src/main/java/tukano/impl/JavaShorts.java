@@ -5,24 +5,33 @@ import static tukano.api.Result.error;
 import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.*;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
 import tukano.api.Blobs;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
-import tukano.api.User;
-import tukano.api.rest.RestShorts;
+import tukano.impl.data.LikeCounters;
+import tukano.impl.data.WriteBehind;
+import tukano.impl.feed.FeedEngine;
 import dataBaseConection.DB_PostgresSQL;
+import cache.Codec;
+import cache.Codecs;
+import cache.CoalescingLoader;
+import cache.NearCache;
 import cache.RedisCache;
-import utils.JSON;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
@@ -31,16 +40,32 @@ public class JavaShorts implements Shorts {
 
     private static final Logger Log = Logger.getLogger(JavaShorts.class.getName());
     private static JavaShorts instance;
-    private final Connection connection;
     private static final String SHORT_CACHE_PREFIX = "short:";
     private static final String FOLLOWERS_CACHE_PREFIX = "followers_user:";
+    private static final String ALL = "all";
+    private static final int LIST_CACHE_TTL = 3600;
+    // Marca em cache um Short inexistente durante NEGATIVE_CACHE_TTL_SECONDS
+    private static final byte[] MISSING = SafeEncoder.encode("-");
+    private static final long MISSING_TTL = Long.getLong("NEGATIVE_CACHE_TTL_SECONDS", 30);
+    private static final Short MISSING_SHORT = new Short();
+    // O feed sem paginação devolve no máximo os FEED_UNPAGED_MAX shorts mais recentes
+    private static final int FEED_UNPAGED_MAX = Integer.getInteger("FEED_UNPAGED_MAX", 10000);
+
+    private static final String SHORTS_PAGE_SQL = "SELECT short_id FROM shorts WHERE user_id = ? AND short_id > ? ORDER BY short_id LIMIT ?";
+    private static final String FOLLOWERS_PAGE_SQL = "SELECT follower FROM following WHERE followee = ? AND follower > ? ORDER BY follower LIMIT ?";
+    private static final String LIKES_PAGE_SQL = "SELECT user_id FROM likes WHERE short_id = ? AND user_id > ? ORDER BY user_id LIMIT ?";
+    private final WriteBehind writeBehind;
+    private final LikeCounters likeCounters;
+    private final FeedEngine feeds;
+    private final NearCache<Short> nearShorts = new NearCache<>("shorts.near", SHORT_CACHE_PREFIX);
+    private final CoalescingLoader<Result<Short>> shortLoads = new CoalescingLoader<>("shorts.load");
+    private final CoalescingLoader<Result<List<String>>> listLoads = new CoalescingLoader<>("lists.load");
 
     private JavaShorts() {
-        try {
-            this.connection = DB_PostgresSQL.getConnection();
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        feeds = FeedEngine.fromConfig();
+        likeCounters = LikeCounters.getInstance();
+        writeBehind = WriteBehind.getInstance();
+        writeBehind.addFlushListener(this::invalidateCachesAfterFlush);
     }
 
     public static synchronized Shorts getInstance() {
@@ -50,9 +75,9 @@ public class JavaShorts implements Shorts {
         return instance;
     }
 
-	private Result<User> validateUserForAction(String userId, String password) {
+	private Result<Void> validateUserForAction(String userId, String password) {
 		// Usa o método okUser existente para validar o usuário
-		Result<User> userResult = okUser(userId, password);
+		Result<Void> userResult = okUser(userId, password);
 		if (!userResult.isOK()) {
 			Log.warning(() -> format("User validation failed for ID: %s with provided password.", userId));
 		}
@@ -64,7 +89,7 @@ public class JavaShorts implements Shorts {
 	public Result<Short> createShort(String userId, String password) {
 		Log.info(() -> format("Initiating short creation for user: %s\n", userId));
 	
-		Result<User> userResult = validateUserForAction(userId, password);
+		Result<Void> userResult = validateUserForAction(userId, password);
 		if (!userResult.isOK()) {
 			return Result.error(userResult.error());
 		}
@@ -73,7 +98,8 @@ public class JavaShorts implements Shorts {
 		try {
 			if (storeShortInDatabase(newShort)) {
 				cacheShort(newShort);
-				return ok(newShort);
+				feeds.created(newShort);
+				return ok(newShort.copyWithLikes_And_Token(0));
 			} else {
 				return Result.error(Result.ErrorCode.INTERNAL_ERROR);
 			}
@@ -92,11 +118,14 @@ public class JavaShorts implements Shorts {
 	
 	// Insere o Short no banco de dados
 	private boolean storeShortInDatabase(Short shrt) throws SQLException {
-		String sql = "INSERT INTO shorts (short_id, user_id, blob_url) VALUES (?, ?, ?)";
-		try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+		// created_at é o timestamp do Short, para o feed em Redis e a base de dados concordarem na ordem
+		String sql = "INSERT INTO shorts (short_id, user_id, blob_url, created_at) VALUES (?, ?, ?, ?)";
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setString(1, shrt.getid());
 			stmt.setString(2, shrt.getOwnerId());
 			stmt.setString(3, shrt.getBlobUrl());
+			stmt.setTimestamp(4, new Timestamp(shrt.getTimestamp()));
 			return stmt.executeUpdate() > 0;
 		}
 	}
@@ -105,21 +134,42 @@ public class JavaShorts implements Shorts {
     public Result<Short> getShort(String shortId) {
         Log.info(() -> format("getShort : shortId = %s\n", shortId));
 
+        // O contador de likes vive no Redis; o Short em cache não o inclui
+        return Result.errorOrValue(loadShort(shortId), shrt -> shrt.copyWithLikes_And_Token(likeCounters.get(shortId)));
+    }
+
+    // Obtém o Short (cache ou base de dados), sem token nem contagem de likes
+    private Result<Short> loadShort(String shortId) {
         if (shortId == null) {
             return error(BAD_REQUEST);
         }
 
-        Short cachedShort = getCachedShort(shortId);
+        Result<Short> cachedShort = cachedShortResult(shortId);
         if (cachedShort != null) {
-            return ok(cachedShort);
+            return cachedShort;
         }
 
+		// Só um pedido por Short vai à base de dados; os outros esperam pelo seu resultado
+		return shortLoads.load(SHORT_CACHE_PREFIX + shortId, () -> cachedShortResult(shortId), () -> loadShortFromDatabase(shortId));
+	}
+
+	// null se o Short não estiver em cache
+	private Result<Short> cachedShortResult(String shortId) {
+		Short shrt = getCachedShort(shortId);
+		if (shrt == null) {
+			return null;
+		}
+		return shrt == MISSING_SHORT ? error(NOT_FOUND) : ok(shrt);
+	}
+
+	private Result<Short> loadShortFromDatabase(String shortId) {
 		try {
 			Short shortFromDB = fetchShortFromDatabase(shortId);
 			if (shortFromDB != null) {
-				cacheShort(shortFromDB);
+				cacheLoadedShort(shortId, Codecs.SHORT.encode(shortFromDB), SetParams.setParams().nx());
 				return ok(shortFromDB);
 			} else {
+				cacheLoadedShort(shortId, MISSING, SetParams.setParams().nx().ex(MISSING_TTL));
 				return Result.error(NOT_FOUND);
 			}
 		} catch (SQLException e) {
@@ -130,15 +180,18 @@ public class JavaShorts implements Shorts {
 	
 	// Método auxiliar para buscar o Short do banco de dados
 	private Short fetchShortFromDatabase(String shortId) throws SQLException {
-		String sql = "SELECT short_id, user_id, blob_url FROM shorts WHERE short_id = ?";
-		try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+		String sql = "SELECT short_id, user_id, blob_url, created_at FROM shorts WHERE short_id = ?";
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement stmt = conn.prepareStatement(sql)) {
 			stmt.setString(1, shortId);
 			try (ResultSet rs = stmt.executeQuery()) {
 				if (rs.next()) {
 					return new Short(
 						rs.getString("short_id"),
 						rs.getString("user_id"),
-						rs.getString("blob_url")
+						rs.getString("blob_url"),
+						rs.getTimestamp("created_at").getTime(),
+						0
 					);
 				}
 			}
@@ -149,20 +202,23 @@ public class JavaShorts implements Shorts {
     public Result<Void> deleteShort(String shortId, String password) {
         Log.info(() -> format("deleteShort : shortId = %s, pwd = %s\n", shortId, password));
 
-        Result<Short> shrt = getShort(shortId);
+        Result<Short> shrt = loadShort(shortId);
         if (shrt.error().equals(NOT_FOUND)) {
             return Result.error(NOT_FOUND);
         }
 
-        Result<User> user = okUser(shrt.value().getOwnerId(), password);
+        Result<Void> user = okUser(shrt.value().getOwnerId(), password);
         if (!user.isOK()) {
             return Result.error(FORBIDDEN);
         }
 
 		try {
+			writeBehind.flush();
 			performShortDeletion(shortId);
 			removeCachedShort(shortId);
-			JavaBlobs.getInstance().delete(shortId, RestShorts.TOKEN);
+			feeds.deleted(shrt.value());
+			likeCounters.remove(shortId);
+			JavaBlobs.getInstance().delete(shortId, Token.get(shortId));
 			return ok();
 		} catch (SQLException e) {
 			Log.severe("Failed to delete short due to database error: " + e.getMessage());
@@ -175,8 +231,9 @@ public class JavaShorts implements Shorts {
 		String deleteLikesSQL = "DELETE FROM likes WHERE short_id = ?";
 		String deleteShortSQL = "DELETE FROM shorts WHERE short_id = ?";
 	
-		try (PreparedStatement stmtLikes = connection.prepareStatement(deleteLikesSQL);
-			 PreparedStatement stmtShort = connection.prepareStatement(deleteShortSQL)) {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmtLikes = conn.prepareStatement(deleteLikesSQL);
+			 PreparedStatement stmtShort = conn.prepareStatement(deleteShortSQL)) {
 			stmtLikes.setString(1, shortId);
 			stmtLikes.executeUpdate();
 	
@@ -205,7 +262,8 @@ public class JavaShorts implements Shorts {
 		// Consulta o banco de dados para obter os IDs dos shorts
 		String querySQL = "SELECT short_id FROM shorts WHERE user_id = ?";
 		List<String> shortIds = new ArrayList<>();
-		try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement pstmt = conn.prepareStatement(querySQL)) {
 			pstmt.setString(1, userId);
 			try (ResultSet rs = pstmt.executeQuery()) {
 				while (rs.next()) {
@@ -220,6 +278,17 @@ public class JavaShorts implements Shorts {
 			return Result.error(Result.ErrorCode.INTERNAL_ERROR);
 		}
 	}
+
+	@Override
+	public Result<Page<String>> getShorts(String userId, String cursor, int limit) {
+		Log.info(() -> format("Retrieving page of shorts for user: %s, cursor: %s", userId, cursor));
+
+		Result<Void> userValidation = okUser(userId);
+		if (!userValidation.isOK()) {
+			return Result.error(NOT_FOUND);
+		}
+		return pageOfIds("shorts_user:" + userId, SHORTS_PAGE_SQL, userId, cursor, limit);
+	}
 	
 	
 	@Override
@@ -227,7 +296,7 @@ public class JavaShorts implements Shorts {
 		Log.info(() -> format("User %s attempting to follow/unfollow user %s", userId1, userId2));
 	
 		// Valida o usuário que está seguindo (userId1) e autentica a senha
-		Result<User> followerValidation = okUser(userId1, password);
+		Result<Void> followerValidation = okUser(userId1, password);
 		if (!followerValidation.isOK()) {
 			return Result.error(followerValidation.error());
 		}
@@ -238,24 +307,8 @@ public class JavaShorts implements Shorts {
 			return Result.error(NOT_FOUND);
 		}
 	
-		// Define a consulta SQL para seguir ou deixar de seguir
-		String sql = isFollowing ? 
-			"INSERT INTO following (follower, followee) VALUES (?, ?)" : 
-			"DELETE FROM following WHERE follower = ? AND followee = ?";
-	
-		// Executa a ação de seguir/deixar de seguir
-		try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-			pstmt.setString(1, userId1);
-			pstmt.setString(2, userId2);
-			pstmt.executeUpdate();
-	
-			// Limpa o cache para atualizar a lista de seguidores
-			unfollowCacheForUser(userId1);
-			return Result.ok();
-		} catch (SQLException e) {
-			Log.severe("Error during follow/unfollow action: " + e.getMessage());
-			return Result.error(Result.ErrorCode.INTERNAL_ERROR);
-		}
+		// Regista a ação no write-behind; a cache é limpa quando o lote chega à base de dados
+		return writeBehind.submit(WriteBehind.Op.follow(userId1, userId2, isFollowing));
 	}
 	
 
@@ -265,22 +318,26 @@ public Result<List<String>> followers(String userId, String password) {
     Log.info(() -> format("Retrieving followers for user: %s", userId));
 
     // Autentica o usuário para garantir que ele tem acesso
-    Result<User> userValidation = okUser(userId, password);
+    Result<Void> userValidation = okUser(userId, password);
     if (!userValidation.isOK()) {
         return Result.error(userValidation.error());
     }
 
     // Tenta buscar a lista de seguidores no cache
     String cacheKey = "followers_user:" + userId;
-    List<String> cachedFollowers = getCachedListFromCache(cacheKey);
+    Result<List<String>> cachedFollowers = cachedList(cacheKey);
     if (cachedFollowers != null) {
-        return Result.ok(cachedFollowers);
+        return cachedFollowers;
     }
+    return listLoads.load(cacheKey, () -> cachedList(cacheKey), () -> loadFollowers(userId, cacheKey));
+}
 
+private Result<List<String>> loadFollowers(String userId, String cacheKey) {
     // Consulta o banco de dados para obter a lista de seguidores
     String querySQL = "SELECT follower FROM following WHERE followee = ?";
     List<String> followers = new ArrayList<>();
-    try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+    try (Connection conn = DB_PostgresSQL.getConnection();
+         PreparedStatement pstmt = conn.prepareStatement(querySQL)) {
         pstmt.setString(1, userId);
         try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
@@ -296,48 +353,40 @@ public Result<List<String>> followers(String userId, String password) {
     }
 }
 
+@Override
+public Result<Page<String>> followers(String userId, String password, String cursor, int limit) {
+    Log.info(() -> format("Retrieving page of followers for user: %s, cursor: %s", userId, cursor));
+
+    Result<Void> userValidation = okUser(userId, password);
+    if (!userValidation.isOK()) {
+        return Result.error(userValidation.error());
+    }
+    return pageOfIds(FOLLOWERS_CACHE_PREFIX + userId, FOLLOWERS_PAGE_SQL, userId, cursor, limit);
+}
+
 
 @Override
 public Result<Void> like(String shortId, String userId, boolean isLiked, String password) {
     Log.info(() -> format("User %s attempting to like/unlike short: %s", userId, shortId));
 
     // Autentica o usuário para garantir que ele pode curtir/descurtir
-    Result<User> userValidation = okUser(userId, password);
+    Result<Void> userValidation = okUser(userId, password);
     if (!userValidation.isOK()) {
         return Result.error(userValidation.error());
     }
 
     // Verifica se o Short existe
-    Result<Short> shortValidation = getShort(shortId);
+    Result<Short> shortValidation = loadShort(shortId);
     if (!shortValidation.isOK()) {
         return Result.error(NOT_FOUND);
     }
 
-    // Define a consulta SQL para curtir ou remover a curtida
-    String sql = isLiked ? 
-        "INSERT INTO likes (user_id, short_id, owner_id) VALUES (?, ?, ?)" : 
-        "DELETE FROM likes WHERE user_id = ? AND short_id = ?";
-
-    // Executa a ação de curtir/descurtir
-    try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-        pstmt.setString(1, userId);
-        pstmt.setString(2, shortId);
-        if (isLiked) {
-            pstmt.setString(3, shortValidation.value().getOwnerId());
-        }
-        pstmt.executeUpdate();
-
-        // Limpa o cache das curtidas para o short específico
-        try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-            jedis.del("likes_short:" + shortId);
-        } catch (JedisException e) {
-            Log.warning("Failed to update Redis cache.");
-        }
-        return Result.ok();
-    } catch (SQLException e) {
-        Log.severe("Error performing like/unlike action: " + e.getMessage());
-        return Result.error(Result.ErrorCode.INTERNAL_ERROR);
+    // Regista a ação no write-behind; a cache é limpa quando o lote chega à base de dados
+    var res = writeBehind.submit(WriteBehind.Op.like(userId, shortId, shortValidation.value().getOwnerId(), isLiked));
+    if (res.isOK()) {
+        likeCounters.like(shortId, userId, isLiked);
     }
+    return res;
 }
 
 @Override
@@ -345,13 +394,13 @@ public Result<List<String>> likes(String shortId, String password) {
     Log.info(() -> format("Retrieving likes for short: %s", shortId));
 
     // Verifica se o Short existe
-    Result<Short> shortValidation = getShort(shortId);
+    Result<Short> shortValidation = loadShort(shortId);
     if (!shortValidation.isOK()) {
         return Result.error(NOT_FOUND);
     }
 
     // Autentica o dono do Short para visualizar as curtidas
-    Result<User> ownerValidation = okUser(shortValidation.value().getOwnerId(), password);
+    Result<Void> ownerValidation = okUser(shortValidation.value().getOwnerId(), password);
     if (ownerValidation.error() == FORBIDDEN) {
         return Result.error(FORBIDDEN);
     } else if (!ownerValidation.isOK()) {
@@ -360,15 +409,19 @@ public Result<List<String>> likes(String shortId, String password) {
 
     // Tenta buscar a lista de curtidas no cache
     String cacheKey = "likes_short:" + shortId;
-    List<String> cachedLikes = getCachedListFromCache(cacheKey);
+    Result<List<String>> cachedLikes = cachedList(cacheKey);
     if (cachedLikes != null) {
-        return Result.ok(cachedLikes);
+        return cachedLikes;
     }
+    return listLoads.load(cacheKey, () -> cachedList(cacheKey), () -> loadLikes(shortId, cacheKey));
+}
 
+private Result<List<String>> loadLikes(String shortId, String cacheKey) {
     // Consulta o banco de dados para obter a lista de curtidas
     String querySQL = "SELECT user_id FROM likes WHERE short_id = ?";
     List<String> likesList = new ArrayList<>();
-    try (PreparedStatement pstmt = connection.prepareStatement(querySQL)) {
+    try (Connection conn = DB_PostgresSQL.getConnection();
+         PreparedStatement pstmt = conn.prepareStatement(querySQL)) {
         pstmt.setString(1, shortId);
         try (ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
@@ -384,40 +437,53 @@ public Result<List<String>> likes(String shortId, String password) {
     }
 }
 
+@Override
+public Result<Page<String>> likes(String shortId, String password, String cursor, int limit) {
+    Log.info(() -> format("Retrieving page of likes for short: %s, cursor: %s", shortId, cursor));
+
+    Result<Short> shortValidation = loadShort(shortId);
+    if (!shortValidation.isOK()) {
+        return Result.error(NOT_FOUND);
+    }
+
+    Result<Void> ownerValidation = okUser(shortValidation.value().getOwnerId(), password);
+    if (ownerValidation.error() == FORBIDDEN) {
+        return Result.error(FORBIDDEN);
+    } else if (!ownerValidation.isOK()) {
+        return Result.error(BAD_REQUEST);
+    }
+    return pageOfIds("likes_short:" + shortId, LIKES_PAGE_SQL, shortId, cursor, limit);
+}
+
 
 @Override
 public Result<List<String>> getFeed(String userId, String password) {
     Log.info(() -> format("Retrieving feed for user: %s", userId));
 
     // Autentica o usuário para garantir que ele tenha acesso ao feed
-    Result<User> userValidation = okUser(userId, password);
+    Result<Void> userValidation = okUser(userId, password);
     if (!userValidation.isOK()) {
         return Result.error(userValidation.error());
     }
 
-    // Tenta recuperar o feed do cache
+    // Tenta recuperar o feed do cache, se o motor do feed não mantiver já a sua própria estrutura
     String cacheKey = "feed_user:" + userId;
-    List<String> cachedFeed = getCachedListFromCache(cacheKey);
+    if (!feeds.cacheable()) {
+        return loadFeed(userId, cacheKey);
+    }
+    Result<List<String>> cachedFeed = cachedList(cacheKey);
     if (cachedFeed != null) {
-        return Result.ok(cachedFeed);
+        return cachedFeed;
     }
+    return listLoads.load(cacheKey, () -> cachedList(cacheKey), () -> loadFeed(userId, cacheKey));
+}
 
-    // Consulta o banco de dados para obter o feed
-    String queryFeedSQL = """
-        SELECT short_id FROM shorts
-        WHERE user_id IN (SELECT followee FROM following WHERE follower = ?)
-        ORDER BY created_at DESC
-    """;
-    List<String> feedList = new ArrayList<>();
-    try (PreparedStatement pstmt = connection.prepareStatement(queryFeedSQL)) {
-        pstmt.setString(1, userId);
-        try (ResultSet rs = pstmt.executeQuery()) {
-            while (rs.next()) {
-                feedList.add(rs.getString("short_id"));
-            }
+private Result<List<String>> loadFeed(String userId, String cacheKey) {
+    try {
+        List<String> feedList = feeds.feed(userId, null, FEED_UNPAGED_MAX).stream().map(Cursor.Keyset::id).toList();
+        if (feeds.cacheable()) {
+            cacheListInCache(cacheKey, feedList);
         }
-        // Armazena o feed no cache para futuras consultas
-        cacheListInCache(cacheKey, feedList);
         return Result.ok(feedList);
     } catch (SQLException e) {
         Log.severe("Error retrieving feed from database: " + e.getMessage());
@@ -425,6 +491,52 @@ public Result<List<String>> getFeed(String userId, String password) {
     }
 }
 
+@Override
+public Result<Page<String>> getFeed(String userId, String password, String cursor, int limit) {
+    Log.info(() -> format("Retrieving page of feed for user: %s, cursor: %s", userId, cursor));
+
+    Result<Void> userValidation = okUser(userId, password);
+    if (!userValidation.isOK()) {
+        return Result.error(userValidation.error());
+    }
+
+    // O cursor do feed é (created_at, short_id) do último short da página anterior
+    Cursor.Keyset after = Cursor.keyset(cursor);
+    if (after == null && !Cursor.isFirst(cursor)) {
+        return Result.error(BAD_REQUEST);
+    }
+    int size = Cursor.pageSize(limit);
+    String cacheKey = "feed_user:" + userId;
+    String field = pageField(cursor, size);
+
+    if (feeds.cacheable()) {
+        Page<String> cachedPage = getCachedField(cacheKey, field, Codecs.STRING_PAGE);
+        if (cachedPage != null) {
+            return Result.ok(cachedPage);
+        }
+    }
+
+    List<Cursor.Keyset> entries;
+    try {
+        entries = new ArrayList<>(feeds.feed(userId, after, size + 1));
+    } catch (SQLException e) {
+        Log.severe("Error retrieving feed from database: " + e.getMessage());
+        return Result.error(Result.ErrorCode.INTERNAL_ERROR);
+    }
+
+    String next = null;
+    if (entries.size() > size) {
+        entries.remove(size);
+        var last = entries.get(size - 1);
+        next = Cursor.of(last.timestamp(), last.id());
+    }
+    var page = new Page<>(entries.stream().map(Cursor.Keyset::id).toList(), next);
+    if (feeds.cacheable()) {
+        cacheField(cacheKey, field, Codecs.STRING_PAGE, page);
+    }
+    return Result.ok(page);
+}
+
    
 private Result<Void> deleteAllShorts(String userId) {
     Log.info(() -> format("Deleting all shorts and related data for user: %s", userId));
@@ -435,11 +547,16 @@ private Result<Void> deleteAllShorts(String userId) {
     String deleteFollowingAsFollowerSQL = "DELETE FROM following WHERE follower = ?";
     String deleteFollowingAsFolloweeSQL = "DELETE FROM following WHERE followee = ?";
 
+    // Likes e follows ainda no write-behind têm de chegar à base de dados antes de serem apagados
+    writeBehind.flush();
+    feeds.deletingUser(userId);
+
     try (
-        PreparedStatement pstmtLikes = connection.prepareStatement(deleteLikesSQL);
-        PreparedStatement pstmtShorts = connection.prepareStatement(deleteShortsSQL);
-        PreparedStatement pstmtFollowingAsFollower = connection.prepareStatement(deleteFollowingAsFollowerSQL);
-        PreparedStatement pstmtFollowingAsFollowee = connection.prepareStatement(deleteFollowingAsFolloweeSQL)
+        Connection conn = DB_PostgresSQL.getConnection();
+        PreparedStatement pstmtLikes = conn.prepareStatement(deleteLikesSQL);
+        PreparedStatement pstmtShorts = conn.prepareStatement(deleteShortsSQL);
+        PreparedStatement pstmtFollowingAsFollower = conn.prepareStatement(deleteFollowingAsFollowerSQL);
+        PreparedStatement pstmtFollowingAsFollowee = conn.prepareStatement(deleteFollowingAsFolloweeSQL)
     ) {
         // Deleta os likes associados aos shorts do usuário
         pstmtLikes.setString(1, userId);
@@ -477,21 +594,43 @@ private Result<Void> deleteAllShorts(String userId) {
 	private void cacheShort(Short shrt) {
 		String cacheKey = SHORT_CACHE_PREFIX + shrt.getid();
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			jedis.set(cacheKey, JSON.encode(shrt));
+			jedis.set(SafeEncoder.encode(cacheKey), Codecs.SHORT.encode(shrt));
 			Log.info("Successfully cached short with ID: " + shrt.getid());
 		} catch (JedisException e) {
 			Log.warning("Error caching short in Redis for ID: " + shrt.getid() + " - " + e.getMessage());
 		}
+		nearShorts.update(cacheKey, shrt);
+	}
+
+	// Só preenche a cache se ninguém a atualizou entretanto; não invalida os outros nós
+	private void cacheLoadedShort(String shortId, byte[] value, SetParams params) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.set(SafeEncoder.encode(SHORT_CACHE_PREFIX + shortId), value, params);
+		} catch (JedisException e) {
+			Log.warning("Error caching short in Redis for ID: " + shortId + " - " + e.getMessage());
+		}
 	}
 	
 
+	// Devolve MISSING_SHORT se o Short não existir
 	private Short getCachedShort(String shortId) {
 		String cacheKey = SHORT_CACHE_PREFIX + shortId;
+		Short near = nearShorts.get(cacheKey);
+		if (near != null) {
+			return near;
+		}
+		long stamp = nearShorts.stamp();
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			String shortJson = jedis.get(cacheKey);
-			if (shortJson != null) {
-				Log.info("Cache hit for short ID: " + shortId);
-				return JSON.decode(shortJson, Short.class);
+			byte[] cached = jedis.get(SafeEncoder.encode(cacheKey));
+			if (cached != null) {
+				Short shrt = Arrays.equals(cached, MISSING) ? MISSING_SHORT : Codecs.SHORT.decode(cached);
+				if (shrt != null) {
+					Log.info("Cache hit for short ID: " + shortId);
+					nearShorts.put(cacheKey, shrt, stamp);
+					return shrt;
+				}
+				// Escrito num formato antigo: é descartado e lido de novo da base de dados
+				jedis.del(SafeEncoder.encode(cacheKey));
 			}
 		} catch (JedisException e) {
 			Log.warning("Redis error retrieving cached short for ID: " + shortId + " - " + e.getMessage());
@@ -500,50 +639,129 @@ private Result<Void> deleteAllShorts(String userId) {
 		return null;
 	}
 	
+	// O Short apagado fica marcado como inexistente
 	private void removeCachedShort(String shortId) {
 		String cacheKey = SHORT_CACHE_PREFIX + shortId;
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			jedis.del(cacheKey);
+			jedis.set(SafeEncoder.encode(cacheKey), MISSING, SetParams.setParams().ex(MISSING_TTL));
 			Log.info("Removed cached short for ID: " + shortId);
 		} catch (JedisException e) {
 			Log.warning("Failed to remove cached short in Redis for ID: " + shortId + " - " + e.getMessage());
 		}
+		nearShorts.invalidate(cacheKey);
 	}
 	
+	// As listas ficam num hash do Redis por chave: o campo ALL guarda a lista completa e
+	// cada página tem o seu campo, por isso um único DEL invalida todas as páginas.
 	private List<String> getCachedListFromCache(String cacheKey) {
+		return getCachedField(cacheKey, ALL, Codecs.STRINGS);
+	}
+
+	// null se a lista não estiver em cache, para uso com o CoalescingLoader
+	private Result<List<String>> cachedList(String cacheKey) {
+		List<String> list = getCachedListFromCache(cacheKey);
+		return list != null ? Result.ok(list) : null;
+	}
+
+	private void cacheListInCache(String cacheKey, List<String> list) {
+		cacheField(cacheKey, ALL, Codecs.STRINGS, list);
+	}
+
+	private <T> T getCachedField(String cacheKey, String field, Codec<T> codec) {
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			String cachedJson = jedis.get(cacheKey);
-			if (cachedJson != null) {
-				Log.info("Cache hit for key: " + cacheKey);
-				return JSON.decode(cachedJson, new TypeReference<List<String>>() {});
+			byte[] cached = jedis.hget(SafeEncoder.encode(cacheKey), SafeEncoder.encode(field));
+			if (cached != null) {
+				T value = codec.decode(cached);
+				if (value != null) {
+					Log.info("Cache hit for key: " + cacheKey + " " + field);
+					return value;
+				}
+				jedis.hdel(SafeEncoder.encode(cacheKey), SafeEncoder.encode(field));
 			}
 		} catch (JedisException e) {
 			Log.warning("Redis access error for key: " + cacheKey + " - " + e.getMessage());
 		}
-		Log.info("Cache miss for key: " + cacheKey);
+		Log.info("Cache miss for key: " + cacheKey + " " + field);
 		return null;
 	}
-	
 
-	private void cacheListInCache(String cacheKey, List<String> list) {
+	private <T> void cacheField(String cacheKey, String field, Codec<T> codec, T value) {
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			jedis.setex(cacheKey, 3600, JSON.encode(list));
-			Log.info("Successfully cached list under key: " + cacheKey);
+			var pipeline = jedis.pipelined();
+			pipeline.hset(SafeEncoder.encode(cacheKey), SafeEncoder.encode(field), codec.encode(value));
+			pipeline.expire(cacheKey, LIST_CACHE_TTL);
+			pipeline.sync();
+			Log.info("Successfully cached list under key: " + cacheKey + " " + field);
 		} catch (JedisException e) {
 			Log.warning("Error caching list in Redis for key: " + cacheKey + " - " + e.getMessage());
 		}
 	}
-	
 
-	private void unfollowCacheForUser(String userId) {
-		String feedCacheKey = "feed_user:" + userId;
-		String followersCacheKey = FOLLOWERS_CACHE_PREFIX + userId;
+	private static String pageField(String cursor, int limit) {
+		return (cursor == null ? "" : cursor) + "/" + limit;
+	}
+
+	// Página de ids ordenada pelo próprio id: WHERE ... AND id > ? ORDER BY id LIMIT ?
+	private Result<Page<String>> pageOfIds(String cacheKey, String sql, String key, String cursor, int limit) {
+		String after = Cursor.id(cursor);
+		if (after == null) {
+			return Result.error(BAD_REQUEST);
+		}
+		int size = Cursor.pageSize(limit);
+		String field = pageField(cursor, size);
+
+		Page<String> cachedPage = getCachedField(cacheKey, field, Codecs.STRING_PAGE);
+		if (cachedPage != null) {
+			return Result.ok(cachedPage);
+		}
+
+		List<String> ids = new ArrayList<>(size + 1);
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			pstmt.setString(1, key);
+			pstmt.setString(2, after);
+			pstmt.setInt(3, size + 1);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				while (rs.next()) {
+					ids.add(rs.getString(1));
+				}
+			}
+		} catch (SQLException e) {
+			Log.severe("Error retrieving page from database: " + e.getMessage());
+			return Result.error(Result.ErrorCode.INTERNAL_ERROR);
+		}
+
+		// Foi pedida uma linha a mais só para saber se existe uma página seguinte
+		String next = null;
+		if (ids.size() > size) {
+			ids.remove(size);
+			next = Cursor.of(ids.get(size - 1));
+		}
+		var page = new Page<>(ids, next);
+		cacheField(cacheKey, field, Codecs.STRING_PAGE, page);
+		return Result.ok(page);
+	}
+
+	// Chamado pelo write-behind depois de cada lote confirmado na base de dados
+	private void invalidateCachesAfterFlush(Collection<WriteBehind.Op> ops) {
 		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
-			jedis.del(feedCacheKey);
-			jedis.del(followersCacheKey);
-			Log.info("Cleared feed and followers cache for user: " + userId);
+			var pipeline = jedis.pipelined();
+			for (var op : ops) {
+				if (op.kind() == WriteBehind.Kind.LIKE) {
+					pipeline.del("likes_short:" + op.b());
+				} else {
+					pipeline.del("feed_user:" + op.a());
+					pipeline.del(FOLLOWERS_CACHE_PREFIX + op.b());
+				}
+			}
+			pipeline.sync();
 		} catch (JedisException e) {
-			Log.warning("Failed to clear cache for user " + userId + " - " + e.getMessage());
+			Log.warning("Failed to clear caches after write-behind flush - " + e.getMessage());
+		}
+		for (var op : ops) {
+			if (op.kind() == WriteBehind.Kind.FOLLOW) {
+				feeds.followed(op.a(), op.b(), op.add());
+			}
 		}
 	}
 	
@@ -557,7 +775,8 @@ private Result<Void> deleteAllShorts(String userId) {
 	
 			// Remove o cache de likes para cada short do usuário
 			String queryUserShortsSQL = "SELECT short_id FROM shorts WHERE user_id = ?";
-			try (PreparedStatement pstmt = connection.prepareStatement(queryUserShortsSQL)) {
+			try (Connection conn = DB_PostgresSQL.getConnection();
+			     PreparedStatement pstmt = conn.prepareStatement(queryUserShortsSQL)) {
 				pstmt.setString(1, userId);
 				try (ResultSet rs = pstmt.executeQuery()) {
 					while (rs.next()) {
@@ -574,15 +793,16 @@ private Result<Void> deleteAllShorts(String userId) {
 	}
 	
 
-    protected Result<User> okUser(String userId, String pwd) {
-        return JavaUsers.getInstance().getUser(userId, pwd);
+    // Aceita a password ou uma sessão de login, verificada só em memória
+    protected Result<Void> okUser(String userId, String pwd) {
+        return JavaUsers.getInstance().authenticate(userId, pwd);
     }
 
 	
 
-    private Result<Void> okUser(String userId) {
-        var res = okUser(userId, "");
-        return res.isOK() || res.error() == FORBIDDEN ? ok() : error(res.error());
+    // Só verifica que o utilizador existe, sem o autenticar
+    protected Result<Void> okUser(String userId) {
+        return JavaUsers.getInstance().checkUserExists(userId);
     }
 
 	
@@ -4,6 +4,9 @@ import static java.lang.String.format;
 import static tukano.api.Result.error;
 import static tukano.api.Result.ErrorCode.*;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Shorts;
 import tukano.api.User;
@@ -11,25 +14,42 @@ import tukano.api.Users;
 import tukano.api.rest.RestShorts;
 
 import dataBaseConection.DB_PostgresSQL;
+import cache.Codec;
+import cache.Codecs;
+import cache.CoalescingLoader;
+import cache.NearCache;
 import cache.RedisCache;
-import utils.JSON;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
-import com.fasterxml.jackson.core.type.TypeReference;
 
 public class JavaUsers implements Users {
 
     private static final Logger Log = Logger.getLogger(JavaUsers.class.getName());
     private static JavaUsers instance;
-    private final Connection connection;
     private static final String USER_CACHE_PREFIX = "user:";
+    private static final String ALL = "all";
+    // Marca em cache um utilizador inexistente durante NEGATIVE_CACHE_TTL_SECONDS
+    private static final byte[] MISSING = SafeEncoder.encode("-");
+    private static final long MISSING_TTL = Long.getLong("NEGATIVE_CACHE_TTL_SECONDS", 30);
+    private static final User MISSING_USER = new User();
+    private static final String SEARCH_PAGE_SQL = "SELECT user_id, email, display_name FROM users WHERE (display_name ILIKE ? OR email ILIKE ?) AND user_id > ? ORDER BY user_id LIMIT ?";
+    // Os índices de trigramas (ver UserSearchIndexes) encontram as linhas que correspondem ao padrão, mas
+    // todas têm de ser lidas e ordenadas antes do LIMIT: com padrões largos o custo é o de ordenar todas.
+    // Sem paginação, devolve no máximo USER_SEARCH_MAX_RESULTS
+    private static final String SEARCH_SQL = "SELECT user_id, email, display_name FROM users WHERE display_name ILIKE ? OR email ILIKE ? ORDER BY user_id LIMIT ?";
+    private static final int SEARCH_MAX_RESULTS = Integer.getInteger("USER_SEARCH_MAX_RESULTS", 1000);
     private final Shorts shorts;
+    private final NearCache<User> nearUsers = new NearCache<>("users.near", USER_CACHE_PREFIX);
+    private final CoalescingLoader<Result<User>> userLoads = new CoalescingLoader<>("users.load");
+    private final FailedLogins failedLogins = new FailedLogins();
+    private final Sessions sessions = new Sessions();
 
     // Construtor singleton
     synchronized public static JavaUsers getInstance() {
@@ -40,12 +60,18 @@ public class JavaUsers implements Users {
     }
 
     private JavaUsers() {
-        try {
-            shorts = JavaShorts.getInstance();
-            connection = DB_PostgresSQL.getConnection();  
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        shorts = JavaShorts.getInstance();
+        // Um utilizador alterado, apagado ou que terminou a sessão noutro nó invalida-o aqui
+        nearUsers.onInvalidate(key -> {
+            if (key == null) {
+                failedLogins.forget(null);
+                return;
+            }
+            var userId = key.substring(USER_CACHE_PREFIX.length());
+            failedLogins.forget(userId);
+            sessions.revokeLocally(userId);
+        });
+        UserSearchIndexes.ensure();
     }
 
     @Override
@@ -80,7 +106,8 @@ public class JavaUsers implements Users {
 
 	// Método auxiliar para realizar a inserção do usuário no banco
 	private boolean executeInsertUser(User user, String query) throws SQLException {
-		try (PreparedStatement ps = connection.prepareStatement(query)) {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement ps = conn.prepareStatement(query)) {
 			ps.setString(1, user.getid());
 			ps.setString(2, user.getPwd());
 			ps.setString(3, user.getEmail());
@@ -91,25 +118,91 @@ public class JavaUsers implements Users {
 	@Override
 	public Result<User> getUser(String userId, String pwd) {
 		Log.info(() -> format("Retrieving user with ID: %s\n", userId));
-	
-		// Primeiro, tenta obter o usuário do cache
-		User userFromCache = fetchUserFromCache(userId, pwd);
-		if (userFromCache != null) {
+
+		// Uma password que acabou de falhar é recusada sem voltar a procurar o utilizador
+		if (nearUsers.isLive() && failedLogins.isKnownBad(userId, pwd)) {
+			return Result.error(Result.ErrorCode.NOT_FOUND);
+		}
+		var res = findUser(userId);
+		return res.isOK() ? checkPassword(res.value(), pwd) : res;
+	}
+
+	@Override
+	public Result<String> login(String userId, String pwd) {
+		Log.info(() -> format("login : userId = %s\n", userId));
+
+		var res = getUser(userId, pwd);
+		return res.isOK() ? Result.ok(sessions.issue(userId)) : Result.error(res.error());
+	}
+
+	@Override
+	public Result<Void> logout(String userId, String pwd) {
+		Log.info(() -> format("logout : userId = %s\n", userId));
+
+		var res = authenticate(userId, pwd);
+		if (res.isOK()) {
+			sessions.revoke(userId);
+			// Os outros nós revogam as sessões ao receber a invalidação
+			nearUsers.invalidate(USER_CACHE_PREFIX + userId);
+		}
+		return res;
+	}
+
+	/**
+	 * Authenticates the user with its password or with a session from login. Sessions are
+	 * checked in memory, without looking the user up.
+	 */
+	public Result<Void> authenticate(String userId, String pwdOrSession) {
+		if (sessions.isValid(pwdOrSession, userId)) {
+			return Result.ok();
+		}
+		var res = getUser(userId, pwdOrSession);
+		return res.isOK() ? Result.ok() : Result.error(res.error());
+	}
+
+	/**
+	 * Checks that the user exists, without authenticating it; served from the cache,
+	 * including for users that do not exist.
+	 */
+	public Result<Void> checkUserExists(String userId) {
+		var res = findUser(userId);
+		return res.isOK() ? Result.ok() : Result.error(res.error());
+	}
+
+	// O utilizador é lido só pelo id, para que os pedidos concorrentes partilhem uma única leitura
+	private Result<User> findUser(String userId) {
+		if (userId == null) {
+			return Result.error(BAD_REQUEST);
+		}
+		Result<User> cached = cachedUserResult(userId);
+		if (cached != null) {
 			Log.info("User retrieved from cache: " + userId);
-			return Result.ok(userFromCache);
+			return cached;
 		}
-	
-		// Query para buscar o usuário no banco de dados
-		String sqlQuery = "SELECT user_id, pwd, email, display_name FROM users WHERE user_id = ? AND pwd = ?";
+		return userLoads.load(USER_CACHE_PREFIX + userId, () -> cachedUserResult(userId), () -> loadUser(userId));
+	}
+
+	// null se o utilizador não estiver em cache
+	private Result<User> cachedUserResult(String userId) {
+		User user = getCachedUser(userId);
+		if (user == null) {
+			return null;
+		}
+		return user == MISSING_USER ? Result.error(NOT_FOUND) : Result.ok(user);
+	}
+
+	private Result<User> loadUser(String userId) {
+		String sqlQuery = "SELECT user_id, pwd, email, display_name FROM users WHERE user_id = ?";
 		try {
-			User userFromDB = fetchUserFromDatabase(userId, pwd, sqlQuery);
+			User userFromDB = fetchUserFromDatabase(userId, sqlQuery);
 			if (userFromDB != null) {
 				// Cacheia o usuário após a recuperação do banco de dados
-				cacheUser(userFromDB);
+				cacheLoadedUser(userFromDB);
 				Log.info("User retrieved from database and cached: " + userId);
 				return Result.ok(userFromDB);
 			} else {
-				Log.info("User not found or password incorrect for ID: " + userId);
+				Log.info("User not found for ID: " + userId);
+				cacheMissingUser(userId);
 				return Result.error(Result.ErrorCode.NOT_FOUND);
 			}
 		} catch (SQLException e) {
@@ -118,17 +211,21 @@ public class JavaUsers implements Users {
 		}
 	}
 	
-	// Método auxiliar para verificar o cache
-	private User fetchUserFromCache(String userId, String pwd) {
-		User cachedUser = getCachedUser(userId);
-		return (cachedUser != null && pwd.equals(cachedUser.getPwd())) ? cachedUser : null;
+	// Uma password errada dá NOT_FOUND, como quando a query filtrava também pela password
+	private Result<User> checkPassword(User user, String pwd) {
+		if (pwd != null && pwd.equals(user.getPwd())) {
+			return Result.ok(user);
+		}
+		Log.info("Password incorrect for ID: " + user.getid());
+		failedLogins.failed(user.getid(), pwd);
+		return Result.error(Result.ErrorCode.NOT_FOUND);
 	}
 	
 	// Método auxiliar para buscar o usuário no banco de dados
-	private User fetchUserFromDatabase(String userId, String pwd, String query) throws SQLException {
-		try (PreparedStatement ps = connection.prepareStatement(query)) {
+	private User fetchUserFromDatabase(String userId, String query) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement ps = conn.prepareStatement(query)) {
 			ps.setString(1, userId);
-			ps.setString(2, pwd);
 			try (ResultSet resultSet = ps.executeQuery()) {
 				if (resultSet.next()) {
 					return new User(
@@ -151,7 +248,8 @@ public class JavaUsers implements Users {
 		try {
 			int rowsAffected = executeUserUpdate(sql, other, userId, pwd);
 			if (rowsAffected > 0) {
-				cacheUser(other);
+				cacheUser(new User(userId, other.getPwd(), other.getEmail(), other.getDisplayName()));
+				sessions.revoke(userId);
 				Log.info("User updated successfully: " + userId);
 				return Result.ok(other);
 			} else {
@@ -166,7 +264,8 @@ public class JavaUsers implements Users {
 	
 	// Método auxiliar para executar a atualização do usuário
 	private int executeUserUpdate(String query, User user, String userId, String password) throws SQLException {
-		try (PreparedStatement ps = connection.prepareStatement(query)) {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement ps = conn.prepareStatement(query)) {
 			ps.setString(1, user.getPwd());
 			ps.setString(2, user.getEmail());
 			ps.setString(3, user.getDisplayName());
@@ -185,6 +284,7 @@ public Result<User> deleteUser(String userId, String pwd) {
     try {
         if (performUserDeletion(delCmd, userId, pwd)) {
             removeCachedUser(userId);
+            sessions.revoke(userId);
             shorts.deleteAllShorts(userId, pwd, RestShorts.TOKEN);
             Log.info("User successfully deleted: " + userId);
             return Result.ok();
@@ -200,7 +300,8 @@ public Result<User> deleteUser(String userId, String pwd) {
 
 // Método auxiliar para executar a exclusão do usuário
 private boolean performUserDeletion(String query, String userId, String pwd) throws SQLException {
-    try (PreparedStatement stmt = connection.prepareStatement(query)) {
+    try (Connection conn = DB_PostgresSQL.getConnection();
+         PreparedStatement stmt = conn.prepareStatement(query)) {
         stmt.setString(1, userId);
         stmt.setString(2, pwd);
         return stmt.executeUpdate() > 0;  // Retorna verdadeiro se uma linha foi deletada
@@ -210,19 +311,21 @@ private boolean performUserDeletion(String query, String userId, String pwd) thr
 	@Override
 	public Result<List<User>> searchUsers(String pattern) {
 		Log.info(() -> format("Searching for users with pattern: %s\n", pattern));
+
+		if (pattern == null) {
+			return Result.error(BAD_REQUEST);
+		}
 	
 		// Tenta buscar os resultados do cache primeiro
-		List<User> cachedResults = fetchCachedSearchResults(pattern);
+		List<User> cachedResults = fetchCachedSearchResults(pattern, ALL, Codecs.USERS);
 		if (cachedResults != null) {
 			Log.info("Search results retrieved from cache for pattern: " + pattern);
 			return Result.ok(cachedResults);
 		}
 	
-		// Query para busca no banco de dados
-		String searchQuery = "SELECT user_id, pwd, email, display_name FROM users WHERE display_name ILIKE ? OR email ILIKE ?";
 		try {
-			List<User> usersFromDB = performUserSearch(pattern, searchQuery);
-			cacheSearchResults(pattern, usersFromDB);
+			List<User> usersFromDB = performUserSearch(pattern);
+			cacheSearchResults(pattern, ALL, Codecs.USERS, usersFromDB);
 			Log.info("Search completed in database for pattern: " + pattern);
 			return Result.ok(usersFromDB);
 		} catch (SQLException e) {
@@ -231,12 +334,61 @@ private boolean performUserDeletion(String query, String userId, String pwd) thr
 		}
 	}
 	
-	// Método auxiliar para buscar os resultados no cache
-	private List<User> fetchCachedSearchResults(String pattern) {
-		String cacheKey = "user_search_" + pattern.toUpperCase();
+	@Override
+	public Result<Page<User>> searchUsers(String pattern, String cursor, int limit) {
+		Log.info(() -> format("Searching for users with pattern: %s, cursor: %s\n", pattern, cursor));
+
+		String after = Cursor.id(cursor);
+		if (pattern == null || after == null) {
+			return Result.error(BAD_REQUEST);
+		}
+		int size = Cursor.pageSize(limit);
+		String field = (cursor == null ? "" : cursor) + "/" + size;
+
+		Page<User> cachedPage = fetchCachedSearchResults(pattern, field, Codecs.USER_PAGE);
+		if (cachedPage != null) {
+			Log.info("Search page retrieved from cache for pattern: " + pattern);
+			return Result.ok(cachedPage);
+		}
+
+		List<User> users = new ArrayList<>(size + 1);
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement stmt = conn.prepareStatement(SEARCH_PAGE_SQL)) {
+			stmt.setString(1, likePattern(pattern));
+			stmt.setString(2, likePattern(pattern));
+			stmt.setString(3, after);
+			stmt.setInt(4, size + 1);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					users.add(new User(rs.getString("user_id"), "", rs.getString("email"), rs.getString("display_name")));
+				}
+			}
+		} catch (SQLException e) {
+			Log.severe("Database error during search: " + e.getMessage());
+			return Result.error(Result.ErrorCode.INTERNAL_ERROR);
+		}
+
+		// Foi pedido um utilizador a mais só para saber se existe uma página seguinte
+		String next = null;
+		if (users.size() > size) {
+			users.remove(size);
+			next = Cursor.of(users.get(size - 1).getid());
+		}
+		var page = new Page<>(users, next);
+		cacheSearchResults(pattern, field, Codecs.USER_PAGE, page);
+		return Result.ok(page);
+	}
+
+	// Os resultados de cada padrão ficam num hash: o campo ALL tem a lista completa e cada página o seu campo
+	private <T> T fetchCachedSearchResults(String pattern, String field, Codec<T> codec) {
+		byte[] cacheKey = SafeEncoder.encode("user_search_" + pattern.toUpperCase());
 		try (Jedis jed = RedisCache.getCachePool().getResource()) {
-			String cachedJson = jed.get(cacheKey);
-			return cachedJson != null ? JSON.decode(cachedJson, new TypeReference<List<User>>() {}) : null;
+			byte[] cached = jed.hget(cacheKey, SafeEncoder.encode(field));
+			T results = cached != null ? codec.decode(cached) : null;
+			if (cached != null && results == null) {
+				jed.hdel(cacheKey, SafeEncoder.encode(field));
+			}
+			return results;
 		} catch (Exception e) {
 			Log.warning("Failed to access Redis cache, continuing with database search.");
 			return null;
@@ -244,16 +396,18 @@ private boolean performUserDeletion(String query, String userId, String pwd) thr
 	}
 	
 	// Método auxiliar para realizar a busca no banco de dados
-	private List<User> performUserSearch(String pattern, String query) throws SQLException {
+	private List<User> performUserSearch(String pattern) throws SQLException {
 		List<User> users = new ArrayList<>();
-		try (PreparedStatement stmt = connection.prepareStatement(query)) {
-			stmt.setString(1, "%" + pattern + "%");
-			stmt.setString(2, "%" + pattern + "%");
+		try (Connection conn = DB_PostgresSQL.getConnection();
+		     PreparedStatement stmt = conn.prepareStatement(SEARCH_SQL)) {
+			stmt.setString(1, likePattern(pattern));
+			stmt.setString(2, likePattern(pattern));
+			stmt.setInt(3, SEARCH_MAX_RESULTS);
 			try (ResultSet rs = stmt.executeQuery()) {
 				while (rs.next()) {
 					users.add(new User(
 						rs.getString("user_id"),
-						rs.getString("pwd"),
+						"",
 						rs.getString("email"),
 						rs.getString("display_name")
 					));
@@ -262,12 +416,28 @@ private boolean performUserDeletion(String query, String userId, String pwd) thr
 		}
 		return users;
 	}
+
+	// O padrão é procurado literalmente: % e _ deixam de ser wildcards do ILIKE
+	private static String likePattern(String pattern) {
+		var sb = new StringBuilder(pattern.length() + 2).append('%');
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '%' || c == '_' || c == '\\') {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		return sb.append('%').toString();
+	}
 	
 	// Método auxiliar para cachear os resultados da busca
-	private void cacheSearchResults(String pattern, List<User> users) {
-		String cacheKey = "user_search_" + pattern.toUpperCase();
+	private <T> void cacheSearchResults(String pattern, String field, Codec<T> codec, T results) {
+		byte[] cacheKey = SafeEncoder.encode("user_search_" + pattern.toUpperCase());
 		try (Jedis jed = RedisCache.getCachePool().getResource()) {
-			jed.setex(cacheKey, 3600, JSON.encode(users));
+			var pipeline = jed.pipelined();
+			pipeline.hset(cacheKey, SafeEncoder.encode(field), codec.encode(results));
+			pipeline.expire(cacheKey, 3600);
+			pipeline.sync();
 		} catch (Exception e) {
 			Log.warning("Failed to cache search results in Redis.");
 		}
@@ -278,22 +448,60 @@ private boolean performUserDeletion(String query, String userId, String pwd) thr
         return (user.id() == null || user.pwd() == null || user.displayName() == null || user.email() == null);
     }
 
+    // O near cache deste nó é atualizado e o dos outros nós invalidado (ver NearCache)
     private void cacheUser(User user) {
         try (Jedis jed = RedisCache.getCachePool().getResource()) {
-            jed.set(USER_CACHE_PREFIX + user.getid(), JSON.encode(user));
+            jed.set(userKey(user.getid()), Codecs.USER.encode(user));
+        }
+        nearUsers.update(USER_CACHE_PREFIX + user.getid(), user);
+    }
+
+    // Só preenche a cache se ninguém a atualizou entretanto; não invalida os outros nós
+    private void cacheLoadedUser(User user) {
+        try (Jedis jed = RedisCache.getCachePool().getResource()) {
+            jed.set(userKey(user.getid()), Codecs.USER.encode(user), SetParams.setParams().nx());
+        }
+    }
+
+    private void cacheMissingUser(String userId) {
+        try (Jedis jed = RedisCache.getCachePool().getResource()) {
+            jed.set(userKey(userId), MISSING, SetParams.setParams().nx().ex(MISSING_TTL));
         }
     }
 
+    // Devolve MISSING_USER se o utilizador não existir
     private User getCachedUser(String userId) {
+        String key = USER_CACHE_PREFIX + userId;
+        User user = nearUsers.get(key);
+        if (user != null) {
+            return user;
+        }
+        long stamp = nearUsers.stamp();
         try (Jedis jed = RedisCache.getCachePool().getResource()) {
-            String userJson = jed.get(USER_CACHE_PREFIX + userId);
-            return userJson != null ? JSON.decode(userJson, User.class) : null;
+            byte[] cached = jed.get(userKey(userId));
+            if (Arrays.equals(cached, MISSING)) {
+                user = MISSING_USER;
+            } else if (cached != null) {
+                user = Codecs.USER.decode(cached);
+                // Escrito num formato antigo: é descartado e lido de novo da base de dados
+                if (user == null) {
+                    jed.del(userKey(userId));
+                }
+            }
         }
+        nearUsers.put(key, user, stamp);
+        return user;
     }
 
+    // O utilizador apagado fica marcado como inexistente
     private void removeCachedUser(String userId) {
         try (Jedis jed = RedisCache.getCachePool().getResource()) {
-            jed.del(USER_CACHE_PREFIX + userId);
+            jed.set(userKey(userId), MISSING, SetParams.setParams().ex(MISSING_TTL));
         }
+        nearUsers.invalidate(USER_CACHE_PREFIX + userId);
+    }
+
+    private static byte[] userKey(String userId) {
+        return SafeEncoder.encode(USER_CACHE_PREFIX + userId);
     }
 }
@@ -0,0 +1,149 @@
+package tukano.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import cache.RedisCache;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import utils.Hex;
+import utils.Metrics;
+import utils.Sleep;
+
+/**
+ * Session tokens, issued to a user by Users.login and accepted instead of its password:
+ * session-<issued>-<signature>, where the signature is that of Token, in the scope
+ * "session", over the user id and the time the session was issued.
+ *
+ * Times are in microseconds, from a clock that never returns the same value twice on a
+ * node, so a session issued right after a revocation, even within the same millisecond,
+ * is always newer than it.
+ *
+ * A session is checked in memory only: it is valid for SESSION_TTL_SECONDS, unless the
+ * sessions of its user were revoked (on logout, or when the user changes or is deleted)
+ * after it was issued. Revocations are kept, by user, for as long as the sessions they
+ * revoke; the older ones are forgotten at most once a minute, not on every revocation.
+ *
+ * Other nodes learn of a revocation through the invalidation of the user in their near
+ * caches (see JavaUsers), and revoke the sessions of the user when they receive it, with
+ * {@link #revokeLocally}. A node disconnected from Redis misses the revocations made
+ * meanwhile, and keeps accepting those sessions until they expire.
+ *
+ * With SESSION_REVOCATIONS_REDIS=true, revocations are also added to the sorted set
+ * sessions:revoked in Redis (user id, scored by time), which every node reads again every
+ * SESSION_REVOCATIONS_REFRESH_MILLIS, so those missed are eventually applied as well.
+ *
+ * Exposes the metrics sessions.issued, sessions.accepted, sessions.rejected and
+ * sessions.revoked.
+ */
+final class Sessions {
+	private static final Logger Log = Logger.getLogger(Sessions.class.getName());
+
+	private static final String PREFIX = "session-";
+	private static final String SCOPE = "session";
+	private static final long TTL = Long.getLong("SESSION_TTL_SECONDS", 3600) * 1_000_000;
+	private static final long PRUNE_PERIOD = Math.min(TTL, 60_000_000);
+	private static final boolean SHARED = Boolean.getBoolean("SESSION_REVOCATIONS_REDIS");
+	private static final long REFRESH = Long.getLong("SESSION_REVOCATIONS_REFRESH_MILLIS", 1000);
+	private static final String REVOKED_KEY = "sessions:revoked";
+
+	// Per user, the time of the last revocation of its sessions.
+	private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+	private final AtomicLong lastTime = new AtomicLong();
+	private final AtomicLong lastPrune = new AtomicLong();
+
+	Sessions() {
+		if (SHARED) {
+			var t = new Thread(this::refresh, "session-revocations");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	String issue(String userId) {
+		long issued = now();
+		Metrics.counter("sessions.issued").increment();
+		return PREFIX + issued + "-" + Hex.of(Token.sign(SCOPE, userId, issued));
+	}
+
+	/**
+	 * @return true if the token is a session of the user, not expired nor revoked; false
+	 *         otherwise, including for tokens that are not sessions at all (e.g., passwords)
+	 */
+	boolean isValid(String token, String userId) {
+		if (token == null || userId == null || !token.startsWith(PREFIX))
+			return false;
+
+		int i = token.indexOf('-', PREFIX.length());
+		long issued;
+		try {
+			issued = Long.parseLong(token, PREFIX.length(), i, 10);
+		} catch (NumberFormatException | IndexOutOfBoundsException x) {
+			return false;
+		}
+		// Read without advancing the clock, as every request checks a session.
+		long now = Math.max(System.currentTimeMillis() * 1000, lastTime.get());
+		var revokedAt = revoked.get(userId);
+		if (issued > now || now - issued >= TTL || (revokedAt != null && issued < revokedAt)
+				|| !Hex.matches(token, i + 1, Token.sign(SCOPE, userId, issued))) {
+			Metrics.counter("sessions.rejected").increment();
+			return false;
+		}
+		Metrics.counter("sessions.accepted").increment();
+		return true;
+	}
+
+	/**
+	 * Revokes the sessions of the user issued until now, on this node and, with
+	 * SESSION_REVOCATIONS_REDIS, in Redis. The caller tells the other nodes.
+	 */
+	void revoke(String userId) {
+		long now = revokeLocally(userId);
+		Metrics.counter("sessions.revoked").increment();
+		if (!SHARED)
+			return;
+
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.zadd(REVOKED_KEY, now, userId);
+			jedis.zremrangeByScore(REVOKED_KEY, Double.NEGATIVE_INFINITY, now - TTL);
+		} catch (JedisException x) {
+			Log.warning("Unable to share the revocation of the sessions of " + userId + ": " + x.getMessage());
+		}
+	}
+
+	/**
+	 * Revokes the sessions of the user issued until now, on this node only.
+	 * @return the time of the revocation
+	 */
+	long revokeLocally(String userId) {
+		long now = now();
+		revoked.merge(userId, now, Math::max);
+		long last = lastPrune.get();
+		if (now - last >= PRUNE_PERIOD && lastPrune.compareAndSet(last, now))
+			revoked.values().removeIf(at -> at < now - TTL);
+		return now;
+	}
+
+	// The time in microseconds, after any returned before.
+	private long now() {
+		long micros = System.currentTimeMillis() * 1000;
+		return lastTime.updateAndGet(last -> Math.max(micros, last + 1));
+	}
+
+	// Merges the revocations of all nodes and forgets those older than any valid session.
+	private void refresh() {
+		for (;;) {
+			long oldest = now() - TTL;
+			try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+				for (var t : jedis.zrangeByScoreWithScores(REVOKED_KEY, oldest, Double.POSITIVE_INFINITY))
+					revoked.merge(t.getElement(), (long) t.getScore(), Math::max);
+			} catch (RuntimeException x) {
+				Log.warning("Session revocations unavailable: " + x.getMessage());
+			}
+			revoked.values().removeIf(at -> at < oldest);
+			Sleep.ms((int) REFRESH);
+		}
+	}
+}
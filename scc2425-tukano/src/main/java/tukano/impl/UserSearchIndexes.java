@@ -0,0 +1,93 @@
+package tukano.impl;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import dataBaseConection.DB_PostgresSQL;
+
+/**
+ * Trigram (pg_trgm) GIN indexes on the display names and emails of users, which Postgres
+ * uses for the ILIKE '%pattern%' of user searches instead of scanning the whole table.
+ *
+ * Created, if missing, once per process on a daemon thread, concurrently so that writes to
+ * users are not blocked meanwhile; with USER_SEARCH_CREATE_INDEXES=false, they are left to
+ * be created by hand. Until they exist (or if they cannot be created, e.g., for lack of
+ * privileges), searches still work, by scanning.
+ *
+ * A concurrent build that fails (e.g., the process died meanwhile) leaves an invalid index,
+ * which Postgres keeps up to date but never uses; such indexes are dropped and built again.
+ * Which indexes ended up valid is logged, with a warning for those that did not.
+ */
+final class UserSearchIndexes {
+	private static final Logger Log = Logger.getLogger(UserSearchIndexes.class.getName());
+
+	private static final boolean CREATE = Boolean.parseBoolean(System.getProperty("USER_SEARCH_CREATE_INDEXES", "true"));
+
+	private static final String EXTENSION = "CREATE EXTENSION IF NOT EXISTS pg_trgm";
+
+	// Index name and its DDL.
+	private static final String[][] INDEXES = {
+			{ "users_display_name_trgm", "CREATE INDEX CONCURRENTLY IF NOT EXISTS users_display_name_trgm ON users USING gin (display_name gin_trgm_ops)" },
+			{ "users_email_trgm", "CREATE INDEX CONCURRENTLY IF NOT EXISTS users_email_trgm ON users USING gin (email gin_trgm_ops)" } };
+
+	private static final String VALIDITY = "SELECT c.relname, i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid"
+			+ " WHERE c.relname IN ('users_display_name_trgm', 'users_email_trgm')";
+
+	private static boolean started;
+
+	synchronized static void ensure() {
+		if (started || !CREATE)
+			return;
+		started = true;
+		var t = new Thread(UserSearchIndexes::create, "user-search-indexes");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private static void create() {
+		try (Connection conn = DB_PostgresSQL.getConnection(); Statement stmt = conn.createStatement()) {
+			// Concurrent index builds cannot run inside a transaction.
+			conn.setAutoCommit(true);
+			stmt.execute(EXTENSION);
+
+			var valid = validity(stmt);
+			for (var index : INDEXES) {
+				if (Boolean.FALSE.equals(valid.get(index[0]))) {
+					Log.warning("Dropping the invalid user search index " + index[0] + ", to build it again");
+					stmt.execute("DROP INDEX CONCURRENTLY IF EXISTS " + index[0]);
+				}
+				stmt.execute(index[1]);
+			}
+
+			valid = validity(stmt);
+			for (var index : INDEXES) {
+				var v = valid.get(index[0]);
+				if (Boolean.TRUE.equals(v))
+					Log.info("User search index " + index[0] + " is valid");
+				else
+					Log.warning("User search index " + index[0] + (v == null ? " is missing" : " is invalid") + ", searches will scan users");
+			}
+		} catch (SQLException | RuntimeException x) {
+			Log.warning("Unable to create the user search indexes, searches will scan users: " + x.getMessage());
+		}
+	}
+
+	/**
+	 * @return whether each existing index is valid, by name
+	 */
+	private static Map<String, Boolean> validity(Statement stmt) throws SQLException {
+		var valid = new HashMap<String, Boolean>();
+		try (var rs = stmt.executeQuery(VALIDITY)) {
+			while (rs.next())
+				valid.put(rs.getString(1), rs.getBoolean(2));
+		}
+		return valid;
+	}
+
+	private UserSearchIndexes() {
+	}
+}
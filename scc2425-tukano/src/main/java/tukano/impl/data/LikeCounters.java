@@ -0,0 +1,336 @@
+package tukano.impl.data;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import cache.RedisCache;
+import dataBaseConection.DB_PostgresSQL;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.params.ScanParams;
+import utils.Metrics;
+
+/**
+ * Live like counters for shorts, kept in Redis so getShort only costs a GET.
+ *
+ * Each short has the set of the users that like it (likes:users:<shortId>) next to its
+ * counter (likes:count:<shortId>). A single script adds or removes the user and moves the
+ * counter only if that changed the set, so repeated likes, and unlikes of shorts never
+ * liked, leave the count untouched. A missing counter is seeded, with its set, from the
+ * likes table and the likes of the short still in the local write-behind journal; likes
+ * journaled meanwhile by other nodes, not yet in the table, are missed by the seed.
+ * Both keys expire LIKE_COUNTS_TTL_SECONDS after the last read or like of the short.
+ *
+ * Counters that changed are remembered in a Redis set and periodically written back to
+ * shorts.total_likes in a JDBC batch. A slower job drops the counters of shorts that no
+ * longer exist and recounts the others from the likes table, seeding again those whose
+ * counter or set disagree with it, e.g., after a like that was journaled but never
+ * counted, or counted but never written.
+ *
+ * At startup, shorts.total_likes is added if missing, and then filled from the likes table.
+ */
+public class LikeCounters {
+	private static final Logger Log = Logger.getLogger(LikeCounters.class.getName());
+
+	private static final String COUNTER_PREFIX = "likes:count:";
+	private static final String LIKERS_PREFIX = "likes:users:";
+	private static final String DIRTY_SET = "likes_count_dirty";
+
+	private static final long PERSIST_PERIOD = Long.getLong("LIKE_COUNTS_PERSIST_MS", 5000);
+	private static final long RECONCILE_PERIOD = Long.getLong("LIKE_COUNTS_RECONCILE_MS", 600000);
+	private static final int BATCH_SIZE = Integer.getInteger("LIKE_COUNTS_BATCH", 500);
+	private static final String TTL = String.valueOf(Long.getLong("LIKE_COUNTS_TTL_SECONDS", 86400));
+
+	// Returns the counter, if any, and keeps it and the set for another TTL (ARGV[1]).
+	private static final String GET = """
+			local n = redis.call('GET', KEYS[1])
+			if n then
+				redis.call('EXPIRE', KEYS[1], ARGV[1])
+				redis.call('EXPIRE', KEYS[2], ARGV[1])
+			end
+			return n
+			""";
+
+	// Returns nil if the counter is missing, so that it is seeded from the database instead
+	// of silently starting at zero; otherwise, whether the like (ARGV[2] = 1) or unlike of the
+	// user changed the set, in which case the counter moved too.
+	private static final String LIKE = """
+			if redis.call('EXISTS', KEYS[1]) == 0 then return nil end
+			local changed
+			if ARGV[2] == '1' then
+				changed = redis.call('SADD', KEYS[2], ARGV[1])
+			else
+				changed = redis.call('SREM', KEYS[2], ARGV[1])
+			end
+			if changed == 1 then
+				redis.call('INCRBY', KEYS[1], ARGV[2] == '1' and 1 or -1)
+				redis.call('SADD', KEYS[3], ARGV[3])
+			end
+			redis.call('EXPIRE', KEYS[1], ARGV[4])
+			redis.call('EXPIRE', KEYS[2], ARGV[4])
+			return changed
+			""";
+
+	// Sets the likers (ARGV[2..]) and the counter, for a TTL (ARGV[1]), unless another node
+	// seeded them first.
+	private static final String SEED = """
+			if redis.call('EXISTS', KEYS[1]) == 1 then return tonumber(redis.call('GET', KEYS[1])) end
+			redis.call('DEL', KEYS[2])
+			for i = 2, #ARGV do redis.call('SADD', KEYS[2], ARGV[i]) end
+			local n = redis.call('SCARD', KEYS[2])
+			redis.call('SET', KEYS[1], n, 'EX', ARGV[1])
+			redis.call('EXPIRE', KEYS[2], ARGV[1])
+			return n
+			""";
+
+	private static final String SELECT_LIKERS = "SELECT user_id FROM likes WHERE short_id = ?";
+	private static final String UPDATE_TOTAL_LIKES = "UPDATE shorts SET total_likes = ? WHERE short_id = ?";
+	private static final String SELECT_EXISTING = "SELECT short_id FROM shorts WHERE short_id = ANY(?)";
+	private static final String COUNT_LIKES = "SELECT short_id, COUNT(*) FROM likes WHERE short_id = ANY(?) GROUP BY short_id";
+
+	private static final String HAS_TOTAL_LIKES = "SELECT 1 FROM information_schema.columns WHERE table_name = 'shorts' AND column_name = 'total_likes'";
+	private static final String ADD_TOTAL_LIKES = "ALTER TABLE shorts ADD COLUMN IF NOT EXISTS total_likes BIGINT NOT NULL DEFAULT 0";
+	private static final String FILL_TOTAL_LIKES = """
+			UPDATE shorts s SET total_likes = c.total
+			FROM (SELECT short_id, COUNT(*) AS total FROM likes GROUP BY short_id) c
+			WHERE s.short_id = c.short_id
+			""";
+
+	private static LikeCounters instance;
+
+	synchronized public static LikeCounters getInstance() {
+		if (instance == null)
+			instance = new LikeCounters();
+		return instance;
+	}
+
+	private LikeCounters() {
+		addTotalLikes();
+		ScheduledExecutorService jobs = Executors.newSingleThreadScheduledExecutor(r -> {
+			var t = new Thread(r, "like-counters");
+			t.setDaemon(true);
+			return t;
+		});
+		jobs.scheduleWithFixedDelay(this::persistDirty, PERSIST_PERIOD, PERSIST_PERIOD, TimeUnit.MILLISECONDS);
+		jobs.scheduleWithFixedDelay(this::reconcile, RECONCILE_PERIOD, RECONCILE_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the live like count of a short, seeding the counter from the likes table if absent.
+	 */
+	public long get(String shortId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var value = jedis.eval(GET, List.of(COUNTER_PREFIX + shortId, LIKERS_PREFIX + shortId), List.of(TTL));
+			if (value != null)
+				return Long.parseLong(value.toString());
+			return seed(jedis, shortId);
+		} catch (JedisException | SQLException e) {
+			Log.warning("Unable to read like counter for " + shortId + " - " + e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Counts a like of the user (isLiked) or its removal, if it changes whether the user likes
+	 * the short.
+	 */
+	public void like(String shortId, String userId, boolean isLiked) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var keys = List.of(COUNTER_PREFIX + shortId, LIKERS_PREFIX + shortId, DIRTY_SET);
+			var args = List.of(userId, isLiked ? "1" : "0", shortId, TTL);
+			if (jedis.eval(LIKE, keys, args) == null) {
+				seed(jedis, shortId);
+				jedis.eval(LIKE, keys, args);
+			}
+		} catch (JedisException | SQLException e) {
+			// Dropping the counter has it seeded again from the likes table.
+			Log.warning("Unable to update like counter for " + shortId + " - " + e.getMessage());
+			remove(shortId);
+		}
+	}
+
+	public void remove(String shortId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(COUNTER_PREFIX + shortId, LIKERS_PREFIX + shortId);
+			jedis.srem(DIRTY_SET, shortId);
+		} catch (JedisException e) {
+			Log.warning("Unable to remove like counter for " + shortId + " - " + e.getMessage());
+		}
+	}
+
+	private long seed(Jedis jedis, String shortId) throws SQLException {
+		// Taken before reading the table, so that none is missed by being flushed meanwhile.
+		var unflushed = WriteBehind.getInstance().unflushed(WriteBehind.Kind.LIKE, shortId);
+
+		var likers = new LinkedHashSet<String>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(SELECT_LIKERS)) {
+			stmt.setString(1, shortId);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					likers.add(rs.getString(1));
+			}
+		}
+		for (var op : unflushed)
+			if (op.add())
+				likers.add(op.a());
+			else
+				likers.remove(op.a());
+
+		var args = new ArrayList<String>(likers.size() + 1);
+		args.add(TTL);
+		args.addAll(likers);
+		var res = jedis.eval(SEED, List.of(COUNTER_PREFIX + shortId, LIKERS_PREFIX + shortId), args);
+		return res instanceof Long n ? n : likers.size();
+	}
+
+	// Adds shorts.total_likes if missing and, only then, fills it from the likes table.
+	private void addTotalLikes() {
+		try (Connection conn = DB_PostgresSQL.getConnection(); Statement stmt = conn.createStatement()) {
+			try (ResultSet rs = stmt.executeQuery(HAS_TOTAL_LIKES)) {
+				if (rs.next())
+					return;
+			}
+			conn.setAutoCommit(false);
+			try {
+				stmt.execute(ADD_TOTAL_LIKES);
+				int filled = stmt.executeUpdate(FILL_TOTAL_LIKES);
+				conn.commit();
+				Log.info(String.format("Added shorts.total_likes, filled for %d shorts\n", filled));
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			Log.warning("Unable to add shorts.total_likes - " + e.getMessage());
+		}
+	}
+
+	// Write-behind of the counters to shorts.total_likes.
+	private void persistDirty() {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			List<String> ids;
+			while (!(ids = jedis.spop(DIRTY_SET, BATCH_SIZE).stream().toList()).isEmpty()) {
+				var values = jedis.mget(ids.stream().map(id -> COUNTER_PREFIX + id).toArray(String[]::new));
+				try {
+					persist(ids, values);
+					Metrics.counter("likeCounters.persisted").add(ids.size());
+				} catch (SQLException e) {
+					jedis.sadd(DIRTY_SET, ids.toArray(new String[0]));
+					Log.warning("Unable to persist like counters, will retry - " + e.getMessage());
+					return;
+				}
+			}
+		} catch (JedisException e) {
+			Log.warning("Unable to persist like counters - " + e.getMessage());
+		}
+	}
+
+	private void persist(List<String> ids, List<String> values) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(UPDATE_TOTAL_LIKES)) {
+			for (int i = 0; i < ids.size(); i++) {
+				if (values.get(i) == null)
+					continue;
+				stmt.setLong(1, Long.parseLong(values.get(i)));
+				stmt.setString(2, ids.get(i));
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		}
+	}
+
+	/**
+	 * Drops the counters of shorts that no longer exist and seeds again those whose counter or
+	 * set of likers disagree with the likes table.
+	 */
+	public void reconcile() {
+		// So that the table has the likes this node already counted.
+		WriteBehind.getInstance().flush();
+
+		var params = new ScanParams().match(COUNTER_PREFIX + "*").count(BATCH_SIZE);
+		var cursor = ScanParams.SCAN_POINTER_START;
+		int repaired = 0;
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			do {
+				var page = jedis.scan(cursor, params);
+				cursor = page.getCursor();
+				var keys = page.getResult();
+				if (keys.isEmpty())
+					continue;
+
+				var ids = keys.stream().map(k -> k.substring(COUNTER_PREFIX.length())).toList();
+				var existing = existingShorts(ids);
+				var counts = likeCounts(ids);
+				var drifted = new ArrayList<String>();
+				for (var id : ids) {
+					if (!existing.contains(id)) {
+						jedis.del(COUNTER_PREFIX + id, LIKERS_PREFIX + id);
+						continue;
+					}
+					var value = jedis.get(COUNTER_PREFIX + id);
+					if (value == null)
+						continue;
+					long expected = counts.getOrDefault(id, 0L);
+					if (Long.parseLong(value) == expected && jedis.scard(LIKERS_PREFIX + id) == expected)
+						continue;
+					// Likes made meanwhile are in the journal, which the seed reads too.
+					jedis.del(COUNTER_PREFIX + id, LIKERS_PREFIX + id);
+					seed(jedis, id);
+					drifted.add(id);
+				}
+				if (!drifted.isEmpty()) {
+					jedis.sadd(DIRTY_SET, drifted.toArray(new String[0]));
+					repaired += drifted.size();
+				}
+			} while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+		} catch (JedisException | SQLException e) {
+			Log.warning("Like counter reconciliation failed - " + e.getMessage());
+		}
+		Metrics.counter("likeCounters.repaired").add(repaired);
+		if (repaired > 0)
+			Log.info(String.format("Repaired %d like counters\n", repaired));
+	}
+
+	private Map<String, Long> likeCounts(List<String> ids) throws SQLException {
+		var res = new HashMap<String, Long>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(COUNT_LIKES)) {
+			stmt.setArray(1, conn.createArrayOf("varchar", ids.toArray()));
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					res.put(rs.getString(1), rs.getLong(2));
+			}
+		}
+		return res;
+	}
+
+	private Set<String> existingShorts(List<String> ids) throws SQLException {
+		var res = new HashSet<String>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(SELECT_EXISTING)) {
+			stmt.setArray(1, conn.createArrayOf("varchar", ids.toArray()));
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					res.add(rs.getString(1));
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,508 @@
+package tukano.impl.data;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.TIMEOUT;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import dataBaseConection.DB_PostgresSQL;
+import tukano.api.Result;
+import utils.Metrics;
+
+/**
+ * Write-behind stage for the likes and following tables.
+ *
+ * A request is acknowledged once its operation is appended to a local journal and
+ * fsync'ed; operations arriving together share a single fsync (group commit). Journaled
+ * operations are coalesced per (user, short) or (follower, followee) pair, so a like
+ * followed by an unlike costs a single statement, and are flushed to the database in
+ * JDBC batches by a background thread.
+ *
+ * The journal is split in segments: a flush rolls over to a new segment and deletes the
+ * older ones once the batch is committed. Segments left behind by a crash are replayed
+ * at startup.
+ *
+ * Both the request queue and the set of pending operations are bounded. When the database
+ * falls behind, appends block and callers time out instead of growing the heap. An operation
+ * that timed out is never applied: either its caller withdraws it before the appender takes
+ * it, or the caller waits for the append that is already under way and reports it done.
+ */
+public class WriteBehind {
+	private static final Logger Log = Logger.getLogger(WriteBehind.class.getName());
+
+	private static final String JOURNAL_DIR = System.getProperty("WRITE_BEHIND_DIR", "/tmp/tukano-write-behind");
+	private static final int QUEUE_SIZE = Integer.getInteger("WRITE_BEHIND_QUEUE", 10000);
+	private static final int GROUP_SIZE = Integer.getInteger("WRITE_BEHIND_GROUP", 256);
+	private static final int BATCH_SIZE = Integer.getInteger("WRITE_BEHIND_BATCH", 500);
+	private static final int MAX_PENDING = Integer.getInteger("WRITE_BEHIND_MAX_PENDING", 50000);
+	private static final long FLUSH_INTERVAL = Long.getLong("WRITE_BEHIND_FLUSH_MS", 200);
+	private static final long ACK_TIMEOUT = Long.getLong("WRITE_BEHIND_ACK_TIMEOUT_MS", 2000);
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private static final String LIKE_INSERT = "INSERT INTO likes (user_id, short_id, owner_id) VALUES (?, ?, ?) ON CONFLICT DO NOTHING";
+	private static final String LIKE_DELETE = "DELETE FROM likes WHERE user_id = ? AND short_id = ?";
+	private static final String FOLLOW_INSERT = "INSERT INTO following (follower, followee) VALUES (?, ?) ON CONFLICT DO NOTHING";
+	private static final String FOLLOW_DELETE = "DELETE FROM following WHERE follower = ? AND followee = ?";
+
+	public enum Kind {
+		LIKE, FOLLOW
+	}
+
+	/**
+	 * A like (a = user, b = short, owner = owner of the short) or a follow (a = follower, b = followee).
+	 * add tells whether the row should exist after the operation.
+	 */
+	public static record Op(Kind kind, String a, String b, String owner, boolean add) {
+
+		public static Op like(String userId, String shortId, String ownerId, boolean isLiked) {
+			return new Op(Kind.LIKE, userId, shortId, ownerId == null ? "" : ownerId, isLiked);
+		}
+
+		public static Op follow(String follower, String followee, boolean isFollowing) {
+			return new Op(Kind.FOLLOW, follower, followee, "", isFollowing);
+		}
+
+		Key key() {
+			return new Key(kind, a, b);
+		}
+	}
+
+	record Key(Kind kind, String a, String b) {
+	}
+
+	// QUEUED until the appender claims it to be journaled, or its caller withdraws it.
+	private static final int QUEUED = 0, CLAIMED = 1, WITHDRAWN = 2;
+
+	record Append(Op op, CompletableFuture<Void> ack, AtomicInteger state) {
+
+		Append(Op op) {
+			this(op, new CompletableFuture<>(), new AtomicInteger(QUEUED));
+		}
+
+		boolean claim() {
+			return state.compareAndSet(QUEUED, CLAIMED);
+		}
+
+		boolean withdraw() {
+			return state.compareAndSet(QUEUED, WITHDRAWN);
+		}
+
+		boolean queued() {
+			return state.get() == QUEUED;
+		}
+	}
+
+	private static WriteBehind instance;
+
+	synchronized public static WriteBehind getInstance() {
+		if (instance == null)
+			instance = new WriteBehind(Paths.get(JOURNAL_DIR));
+		return instance;
+	}
+
+	private final Path dir;
+	private final BlockingQueue<Append> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+	private final List<Consumer<Collection<Op>>> listeners = new CopyOnWriteArrayList<>();
+
+	// Guards pending and the current segment, which must change together.
+	private final Object lock = new Object();
+	private final Object flushLock = new Object();
+	private Map<Key, Op> pending = new LinkedHashMap<>();
+	// The batch being written to the database, until it is committed or put back in pending.
+	private Map<Key, Op> flushing = Map.of();
+	private FileChannel segment;
+	private long segmentSeq;
+
+	private volatile boolean running = true;
+	private final Thread appender;
+	private final Thread flusher;
+
+	private final LongAdder appended = Metrics.counter("writeBehind.appended");
+	private final LongAdder coalesced = Metrics.counter("writeBehind.coalesced");
+	private final LongAdder rejected = Metrics.counter("writeBehind.rejected");
+	private final LongAdder fsyncs = Metrics.counter("writeBehind.fsyncs");
+	private final LongAdder flushed = Metrics.counter("writeBehind.flushed");
+	private final LongAdder flushFailures = Metrics.counter("writeBehind.flushFailures");
+	private final LongAdder dropped = Metrics.counter("writeBehind.dropped");
+
+	private WriteBehind(Path dir) {
+		this.dir = dir;
+		try {
+			Files.createDirectories(dir);
+			replay();
+			rollSegment();
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open write-behind journal at " + dir, e);
+		}
+		Metrics.gauge("writeBehind.queue", queue::size);
+		Metrics.gauge("writeBehind.pending", this::pendingCount);
+
+		appender = daemon("write-behind-appender", this::appendLoop);
+		flusher = daemon("write-behind-flusher", this::flushLoop);
+		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "write-behind-shutdown"));
+	}
+
+	/**
+	 * Registers a callback that runs after each committed batch, e.g. to invalidate caches
+	 * that were derived from the rows that changed.
+	 */
+	public void addFlushListener(Consumer<Collection<Op>> listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Appends the operation to the journal and waits for it to be durable.
+	 *
+	 * @return OK once the operation is journaled;
+	 *         TIMEOUT if the stage is saturated and the operation could not be accepted in time,
+	 *         in which case the operation is not applied;
+	 *         INTERNAL_ERROR if the journal could not be written.
+	 */
+	public Result<Void> submit(Op op) {
+		if (!running)
+			return error(INTERNAL_ERROR);
+
+		var append = new Append(op);
+		try {
+			if (!queue.offer(append, ACK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				rejected.increment();
+				return error(TIMEOUT);
+			}
+			try {
+				append.ack().get(ACK_TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (append.withdraw()) {
+					rejected.increment();
+					return error(TIMEOUT);
+				}
+				// Already being journaled: it is only claimed once there is room for it, so
+				// its outcome is only an fsync away.
+				append.ack().get();
+			}
+			return ok();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return error(INTERNAL_ERROR);
+		} catch (Exception e) {
+			Log.severe("Write-behind append failed: " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	/**
+	 * Returns the operations of the kind on b (e.g., the likes of a short) journaled but
+	 * maybe not yet in the database, newest last. Applying them again over what the
+	 * database has changes nothing, so they can be taken before reading it.
+	 */
+	public List<Op> unflushed(Kind kind, String b) {
+		var res = new LinkedHashMap<Key, Op>();
+		synchronized (lock) {
+			for (var ops : List.of(flushing, pending))
+				for (var op : ops.values())
+					if (op.kind() == kind && op.b().equals(b))
+						res.put(op.key(), op);
+		}
+		return new ArrayList<>(res.values());
+	}
+
+	/**
+	 * Writes every journaled operation to the database now. Used before operations that
+	 * must observe all previous likes and follows, such as deleting shorts.
+	 */
+	public void flush() {
+		synchronized (flushLock) {
+			Map<Key, Op> batch;
+			long upTo;
+			synchronized (lock) {
+				if (pending.isEmpty())
+					return;
+				batch = pending;
+				flushing = batch;
+				pending = new LinkedHashMap<>();
+				upTo = segmentSeq;
+				try {
+					rollSegment();
+				} catch (IOException e) {
+					Log.severe("Unable to roll write-behind journal: " + e.getMessage());
+				}
+				lock.notifyAll();
+			}
+			try {
+				writeToDatabase(batch.values());
+				flushed.add(batch.size());
+				deleteSegments(upTo);
+				synchronized (lock) {
+					flushing = Map.of();
+				}
+				for (var l : listeners)
+					l.accept(batch.values());
+			} catch (SQLException e) {
+				flushFailures.increment();
+				Log.warning("Write-behind flush failed, will retry: " + e.getMessage());
+				synchronized (lock) {
+					// Operations that arrived in the meantime are newer, so they win.
+					var merged = new LinkedHashMap<>(batch);
+					merged.putAll(pending);
+					pending = merged;
+					flushing = Map.of();
+				}
+			}
+		}
+	}
+
+	private void appendLoop() {
+		var group = new ArrayList<Append>(GROUP_SIZE);
+		while (running || !queue.isEmpty()) {
+			group.clear();
+			try {
+				var first = queue.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				group.add(first);
+			} catch (InterruptedException e) {
+				continue;
+			}
+			queue.drainTo(group, GROUP_SIZE - 1);
+			try {
+				synchronized (lock) {
+					// Waits for room before claiming, so callers that give up meanwhile can
+					// still withdraw, and get TIMEOUT.
+					while (pending.size() >= MAX_PENDING && running && group.stream().anyMatch(Append::queued)) {
+						lock.notifyAll();
+						lock.wait(FLUSH_INTERVAL);
+					}
+					group.removeIf(a -> !a.claim());
+					if (group.isEmpty())
+						continue;
+					segment.write(ByteBuffer.wrap(encode(group)));
+					segment.force(false);
+					fsyncs.increment();
+					for (var a : group)
+						if (pending.put(a.op().key(), a.op()) != null)
+							coalesced.increment();
+					if (pending.size() >= BATCH_SIZE)
+						lock.notifyAll();
+				}
+				appended.add(group.size());
+				group.forEach(a -> a.ack().complete(null));
+			} catch (IOException | InterruptedException e) {
+				group.forEach(a -> a.ack().completeExceptionally(e));
+			}
+		}
+	}
+
+	private void flushLoop() {
+		while (running) {
+			try {
+				synchronized (lock) {
+					if (pending.size() < BATCH_SIZE)
+						lock.wait(FLUSH_INTERVAL);
+				}
+				flush();
+			} catch (InterruptedException e) {
+				// shutting down
+			} catch (RuntimeException e) {
+				Log.warning("Write-behind flusher error: " + e.getMessage());
+			}
+		}
+	}
+
+	private void writeToDatabase(Collection<Op> ops) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection()) {
+			conn.setAutoCommit(false);
+			try {
+				executeBatches(conn, ops);
+				conn.commit();
+			} catch (SQLException e) {
+				conn.rollback();
+				if (!isConstraintViolation(e))
+					throw e;
+				// Some row was rejected (e.g. a like for a short deleted in the meantime):
+				// apply one at a time so a single bad operation does not block the others forever.
+				conn.setAutoCommit(true);
+				for (var op : ops)
+					try {
+						executeBatches(conn, List.of(op));
+					} catch (SQLException x) {
+						if (!isConstraintViolation(x))
+							throw x;
+						dropped.increment();
+						Log.warning("Dropping write-behind operation " + op + ": " + x.getMessage());
+					}
+			}
+		}
+	}
+
+	private static void executeBatches(Connection conn, Collection<Op> ops) throws SQLException {
+		try (PreparedStatement likeInsert = conn.prepareStatement(LIKE_INSERT);
+			 PreparedStatement likeDelete = conn.prepareStatement(LIKE_DELETE);
+			 PreparedStatement followInsert = conn.prepareStatement(FOLLOW_INSERT);
+			 PreparedStatement followDelete = conn.prepareStatement(FOLLOW_DELETE)) {
+			int[] counts = new int[4];
+			for (var op : ops) {
+				PreparedStatement stmt;
+				if (op.kind() == Kind.LIKE) {
+					stmt = op.add() ? likeInsert : likeDelete;
+					counts[op.add() ? 0 : 1]++;
+				} else {
+					stmt = op.add() ? followInsert : followDelete;
+					counts[op.add() ? 2 : 3]++;
+				}
+				stmt.setString(1, op.a());
+				stmt.setString(2, op.b());
+				if (op.kind() == Kind.LIKE && op.add())
+					stmt.setString(3, op.owner());
+				stmt.addBatch();
+			}
+			if (counts[0] > 0)
+				likeInsert.executeBatch();
+			if (counts[1] > 0)
+				likeDelete.executeBatch();
+			if (counts[2] > 0)
+				followInsert.executeBatch();
+			if (counts[3] > 0)
+				followDelete.executeBatch();
+		}
+	}
+
+	// SQLState class 23 is "integrity constraint violation": the row is bad, not the database.
+	private static boolean isConstraintViolation(SQLException e) {
+		for (var x = e; x != null; x = x.getNextException())
+			if (x.getSQLState() != null && x.getSQLState().startsWith("23"))
+				return true;
+		return false;
+	}
+
+	private int pendingCount() {
+		synchronized (lock) {
+			return pending.size();
+		}
+	}
+
+	private void shutdown() {
+		running = false;
+		appender.interrupt();
+		try {
+			appender.join(ACK_TIMEOUT);
+		} catch (InterruptedException e) {
+			// proceed with what has been journaled
+		}
+		flusher.interrupt();
+		flush();
+		synchronized (lock) {
+			try {
+				segment.close();
+			} catch (IOException e) {
+				Log.warning("Unable to close write-behind journal: " + e.getMessage());
+			}
+		}
+	}
+
+	// Journal segments ------------------------------------------------------------
+
+	private static byte[] encode(List<Append> group) throws IOException {
+		var bytes = new ByteArrayOutputStream(group.size() * 64);
+		var out = new DataOutputStream(bytes);
+		for (var a : group) {
+			var op = a.op();
+			out.writeByte(op.kind().ordinal());
+			out.writeBoolean(op.add());
+			out.writeUTF(op.a());
+			out.writeUTF(op.b());
+			out.writeUTF(op.owner());
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private void replay() throws IOException {
+		var segments = segments();
+		for (var file : segments) {
+			var seq = seqOf(file);
+			segmentSeq = Math.max(segmentSeq, seq);
+			try (var in = new DataInputStream(Files.newInputStream(file))) {
+				while (true) {
+					var kind = Kind.values()[in.readByte()];
+					var add = in.readBoolean();
+					var op = new Op(kind, in.readUTF(), in.readUTF(), in.readUTF(), add);
+					pending.put(op.key(), op);
+				}
+			} catch (EOFException e) {
+				// end of segment, or a record torn by a crash: it was never acknowledged
+			}
+		}
+		if (!segments.isEmpty())
+			Log.info(String.format("Replayed %d write-behind operations from %d journal segments\n", pending.size(), segments.size()));
+	}
+
+	private List<Path> segments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(f -> f.getFileName().toString().startsWith(SEGMENT_PREFIX))
+					.sorted((x, y) -> Long.compare(seqOf(x), seqOf(y)))
+					.toList();
+		}
+	}
+
+	private void rollSegment() throws IOException {
+		if (segment != null)
+			segment.close();
+		segmentSeq++;
+		segment = FileChannel.open(dir.resolve(SEGMENT_PREFIX + segmentSeq + SEGMENT_SUFFIX),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void deleteSegments(long upTo) {
+		try {
+			for (var file : segments())
+				if (seqOf(file) <= upTo)
+					Files.deleteIfExists(file);
+		} catch (IOException e) {
+			Log.warning("Unable to delete flushed journal segments: " + e.getMessage());
+		}
+	}
+
+	private static long seqOf(Path file) {
+		var name = file.getFileName().toString();
+		return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+	}
+
+	private static Thread daemon(String name, Runnable r) {
+		var t = new Thread(r, name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+}
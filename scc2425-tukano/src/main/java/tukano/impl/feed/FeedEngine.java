@@ -0,0 +1,58 @@
+package tukano.impl.feed;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import tukano.api.Short;
+import tukano.impl.Cursor;
+
+/**
+ * Builds the feeds of users, newest shorts first.
+ *
+ * Feed entries are (timestamp, shortId) pairs, with the timestamp in microseconds, so they
+ * can be turned into keyset cursors. The engine is selected with the system property
+ * FEED_ENGINE: sql (default), push or pull.
+ *
+ * The notification methods are called after the change is in the database.
+ */
+public interface FeedEngine {
+
+	String FEED_ENGINE = System.getProperty("FEED_ENGINE", "sql");
+
+	static FeedEngine fromConfig() {
+		return switch (FEED_ENGINE) {
+		case "push" -> new PushFeed(new SqlFeed());
+		case "pull" -> new PullFeed(new SqlFeed());
+		default -> new SqlFeed();
+		};
+	}
+
+	/**
+	 * @param after the last entry of the previous page, or null for the first page
+	 * @param limit the maximum number of entries to return
+	 * @return the entries of the feed of the user older than after, newest first
+	 */
+	List<Cursor.Keyset> feed(String userId, Cursor.Keyset after, int limit) throws SQLException;
+
+	/**
+	 * @return true if the results can be kept in the list caches, false if the engine keeps its own structures up to date
+	 */
+	default boolean cacheable() {
+		return false;
+	}
+
+	default void created(Short shrt) {
+	}
+
+	default void deleted(Short shrt) {
+	}
+
+	default void followed(String follower, String followee, boolean isFollowing) {
+	}
+
+	/**
+	 * Called before the shorts and follow relations of the user are deleted.
+	 */
+	default void deletingUser(String userId) {
+	}
+}
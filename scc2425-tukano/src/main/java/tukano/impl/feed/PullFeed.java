@@ -0,0 +1,273 @@
+package tukano.impl.feed;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+import cache.RedisCache;
+import dataBaseConection.DB_PostgresSQL;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.resps.Tuple;
+import tukano.api.Short;
+import tukano.impl.Cursor;
+import utils.Metrics;
+
+/**
+ * Feeds merged on read from per-author timelines (fan-out on read).
+ *
+ * Each author has a Redis sorted set timeline:<userId> of its short ids scored by their
+ * timestamp, bounded to the newest FEED_TIMELINE_MAX entries. Creating a short is a
+ * single ZADD, whatever the number of followers. Reading a feed is a k-way merge over
+ * the timelines of the k followees, with a heap that stops after the first N entries,
+ * so it costs O(N log k) and reads at most FEED_TIMELINE_CHUNK entries ahead per followee.
+ *
+ * Missing timelines are rebuilt from the database and expire after FEED_TIMELINE_TTL_SECONDS
+ * without being read. Entries older than a full timeline are read from the database.
+ */
+public class PullFeed implements FeedEngine {
+	private static final Logger Log = Logger.getLogger(PullFeed.class.getName());
+
+	private static final String TIMELINE_PREFIX = "timeline:";
+
+	private static final int MAX_LENGTH = Integer.getInteger("FEED_TIMELINE_MAX", 1000);
+	private static final long TTL = Long.getLong("FEED_TIMELINE_TTL_SECONDS", 7 * 24 * 3600);
+	private static final int CHUNK = Integer.getInteger("FEED_TIMELINE_CHUNK", 32);
+
+	private static final String FOLLOWEES_SQL = "SELECT followee FROM following WHERE follower = ?";
+	private static final String AUTHOR_NEXT_SQL = """
+			SELECT short_id, created_at FROM shorts
+			WHERE user_id = ? AND (created_at, short_id) < (?, ?)
+			ORDER BY created_at DESC, short_id DESC LIMIT ?
+			""";
+
+	private final SqlFeed sql;
+
+	public PullFeed(SqlFeed sql) {
+		this.sql = sql;
+	}
+
+	@Override
+	public List<Cursor.Keyset> feed(String userId, Cursor.Keyset after, int limit) throws SQLException {
+		var followees = followees(userId);
+		if (followees.isEmpty() || limit <= 0)
+			return List.of();
+
+		int chunk = Math.min(limit, CHUNK);
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var timelines = open(jedis, followees, after, chunk);
+
+			var heap = new PriorityQueue<Timeline>(timelines.size(), Comparator.comparing(Timeline::head, PushFeed.NEWEST_FIRST));
+			for (var t : timelines)
+				if (t.head() != null)
+					heap.add(t);
+
+			var res = new ArrayList<Cursor.Keyset>(Math.min(limit, 1024));
+			while (res.size() < limit && !heap.isEmpty()) {
+				var t = heap.poll();
+				res.add(t.next());
+				if (t.head() != null || t.refill(jedis, chunk))
+					heap.add(t);
+			}
+			Metrics.counter("feed.pull.merged").add(timelines.size());
+			return res;
+		} catch (JedisException e) {
+			Log.warning("Unable to read timelines for the feed of " + userId + ", using the database - " + e.getMessage());
+			return sql.feed(userId, after, limit);
+		}
+	}
+
+	@Override
+	public void created(Short shrt) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var score = Long.toString(shrt.getTimestamp() * 1000);
+			jedis.eval(PushFeed.PUSH_IF_PRESENT, 1, TIMELINE_PREFIX + shrt.getOwnerId(), score, shrt.getid(), Integer.toString(MAX_LENGTH));
+		} catch (JedisException e) {
+			Log.warning("Unable to add short " + shrt.getid() + " to the timeline of " + shrt.getOwnerId() + " - " + e.getMessage());
+			dropTimeline(shrt.getOwnerId());
+		}
+	}
+
+	@Override
+	public void deleted(Short shrt) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.zrem(TIMELINE_PREFIX + shrt.getOwnerId(), shrt.getid());
+		} catch (JedisException e) {
+			Log.warning("Unable to remove short " + shrt.getid() + " from the timeline of " + shrt.getOwnerId() + " - " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void deletingUser(String userId) {
+		dropTimeline(userId);
+	}
+
+	// Reads the first chunk of every timeline in a single round trip, rebuilding the missing ones.
+	private List<Timeline> open(Jedis jedis, List<String> authors, Cursor.Keyset after, int chunk) throws SQLException {
+		var pipeline = jedis.pipelined();
+		var exists = new ArrayList<Response<Boolean>>(authors.size());
+		for (var author : authors)
+			exists.add(pipeline.exists(TIMELINE_PREFIX + author));
+		pipeline.sync();
+
+		for (int i = 0; i < authors.size(); i++)
+			if (!exists.get(i).get())
+				rebuild(jedis, authors.get(i));
+
+		var timelines = new ArrayList<Timeline>(authors.size());
+		var firstChunks = new ArrayList<Response<List<Tuple>>>(authors.size());
+		var sizes = new ArrayList<Response<Long>>(authors.size());
+		pipeline = jedis.pipelined();
+		for (var author : authors) {
+			var t = new Timeline(author, after);
+			timelines.add(t);
+			pipeline.expire(t.key, TTL);
+			firstChunks.add(pipeline.zrevrangeByScoreWithScores(t.key, t.max, "(0", 0, chunk));
+			sizes.add(pipeline.zcard(t.key));
+		}
+		pipeline.sync();
+
+		for (int i = 0; i < timelines.size(); i++) {
+			var t = timelines.get(i);
+			t.truncated = sizes.get(i).get() >= MAX_LENGTH;
+			t.add(firstChunks.get(i).get(), chunk);
+			if (t.head() == null && !t.exhausted)
+				t.refill(jedis, chunk);
+		}
+		return timelines;
+	}
+
+	private void rebuild(Jedis jedis, String author) throws SQLException {
+		Metrics.counter("feed.pull.rebuilds").increment();
+		var key = TIMELINE_PREFIX + author;
+		// Created before querying the database, so shorts created meanwhile are added to it.
+		jedis.zadd(key, 0, PushFeed.EMPTY);
+		var entries = new HashMap<String, Double>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(PushFeed.AUTHOR_SQL)) {
+			stmt.setString(1, author);
+			stmt.setInt(2, MAX_LENGTH);
+			for (var e : SqlFeed.entries(stmt))
+				entries.put(e.id(), (double) e.timestamp());
+		}
+		if (!entries.isEmpty())
+			jedis.zadd(key, entries);
+	}
+
+	private List<String> followees(String userId) throws SQLException {
+		var res = new ArrayList<String>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(FOLLOWEES_SQL)) {
+			stmt.setString(1, userId);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					res.add(rs.getString(1));
+			}
+		}
+		return res;
+	}
+
+	private static void dropTimeline(String userId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(TIMELINE_PREFIX + userId);
+		} catch (JedisException e) {
+			Log.warning("Unable to drop the timeline of " + userId + " - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Iterator over the timeline of one author, newest first, read a chunk at a time.
+	 *
+	 * Chunks are read from the sorted set with an offset into the range of scores up to
+	 * the score of after (inclusive, to keep the entries sharing it); once the sorted set
+	 * is exhausted, a full timeline continues from the database.
+	 */
+	static class Timeline {
+		final String author;
+		final String key;
+		final Cursor.Keyset after;
+		final String max;
+		final List<Cursor.Keyset> buffer = new ArrayList<>();
+		int pos;
+		int offset;
+		boolean truncated;
+		boolean exhausted;
+		boolean fromDatabase;
+		Cursor.Keyset last;
+
+		Timeline(String author, Cursor.Keyset after) {
+			this.author = author;
+			this.key = TIMELINE_PREFIX + author;
+			this.after = after;
+			this.max = after == null ? "+inf" : Long.toString(after.timestamp());
+		}
+
+		Cursor.Keyset head() {
+			return pos < buffer.size() ? buffer.get(pos) : null;
+		}
+
+		Cursor.Keyset next() {
+			return last = buffer.get(pos++);
+		}
+
+		/**
+		 * Reads the next chunk. Returns true if it has more entries.
+		 */
+		boolean refill(Jedis jedis, int chunk) throws SQLException {
+			while (head() == null && !exhausted) {
+				if (fromDatabase)
+					readDatabase(chunk);
+				else
+					add(jedis.zrevrangeByScoreWithScores(key, max, "(0", offset, chunk), chunk);
+			}
+			return head() != null;
+		}
+
+		void add(List<Tuple> tuples, int chunk) {
+			buffer.clear();
+			pos = 0;
+			offset += tuples.size();
+			// Shorts created meanwhile shift the offsets, so entries already seen may come again.
+			var bound = last != null ? last : after;
+			for (var t : tuples) {
+				var e = new Cursor.Keyset((long) t.getScore(), t.getElement());
+				if (bound == null || PushFeed.NEWEST_FIRST.compare(e, bound) > 0)
+					buffer.add(e);
+			}
+			if (tuples.size() < chunk) {
+				if (truncated) {
+					Metrics.counter("feed.pull.database").increment();
+					fromDatabase = true;
+				} else
+					exhausted = true;
+			}
+		}
+
+		private void readDatabase(int chunk) throws SQLException {
+			var from = last != null ? last : after;
+			buffer.clear();
+			pos = 0;
+			try (Connection conn = DB_PostgresSQL.getConnection();
+				 PreparedStatement stmt = conn.prepareStatement(from == null ? PushFeed.AUTHOR_SQL : AUTHOR_NEXT_SQL)) {
+				int i = 1;
+				stmt.setString(i++, author);
+				if (from != null) {
+					stmt.setTimestamp(i++, SqlFeed.fromMicros(from.timestamp()));
+					stmt.setString(i++, from.id());
+				}
+				stmt.setInt(i, chunk);
+				buffer.addAll(SqlFeed.entries(stmt));
+			}
+			if (buffer.size() < chunk)
+				exhausted = true;
+		}
+	}
+}
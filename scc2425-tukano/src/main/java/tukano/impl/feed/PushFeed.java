@@ -0,0 +1,294 @@
+package tukano.impl.feed;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import cache.RedisCache;
+import dataBaseConection.DB_PostgresSQL;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisException;
+import tukano.api.Short;
+import tukano.impl.Cursor;
+import utils.Metrics;
+
+/**
+ * Feeds materialized on write (fan-out on write).
+ *
+ * Each feed is a Redis sorted set feed:<userId> of short ids scored by their timestamp,
+ * bounded to the newest FEED_PUSH_MAX entries. createShort pushes the new short into the
+ * feeds of the followers of its owner, so reading a feed is a range read.
+ *
+ * - Only feeds that already exist are pushed to; a missing feed is rebuilt from the
+ *   database on its first read, and feeds not read for FEED_PUSH_TTL_SECONDS expire, so
+ *   only active users occupy memory.
+ * - Owners with more than FEED_CELEBRITY_FOLLOWERS followers are not fanned out; their
+ *   shorts are merged into the feed at read time instead. Deleted shorts are still removed
+ *   from all the feeds of their followers, which may hold those pushed earlier.
+ * - Pages beyond the newest FEED_PUSH_MAX entries are read from the database.
+ */
+public class PushFeed implements FeedEngine {
+	private static final Logger Log = Logger.getLogger(PushFeed.class.getName());
+
+	private static final String FEED_PREFIX = "feed:";
+	private static final String CELEBRITIES = "feed_celebrities";
+	// Marks a feed that was built but is empty; never returned.
+	static final String EMPTY = "";
+
+	private static final int MAX_LENGTH = Integer.getInteger("FEED_PUSH_MAX", 800);
+	private static final long TTL = Long.getLong("FEED_PUSH_TTL_SECONDS", 7 * 24 * 3600);
+	private static final int CELEBRITY_FOLLOWERS = Integer.getInteger("FEED_CELEBRITY_FOLLOWERS", 10000);
+
+	static final String PUSH_IF_PRESENT = """
+			if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end
+			redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])
+			redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[3]) - 1)
+			return 1
+			""";
+
+	private static final String FOLLOWERS_SQL = "SELECT follower FROM following WHERE followee = ? LIMIT ?";
+	static final String AUTHOR_SQL = "SELECT short_id, created_at FROM shorts WHERE user_id = ? ORDER BY created_at DESC, short_id DESC LIMIT ?";
+	private static final String CELEBRITIES_FIRST_PAGE_SQL = """
+			SELECT short_id, created_at FROM shorts
+			WHERE user_id = ANY(?) AND user_id IN (SELECT followee FROM following WHERE follower = ?)
+			ORDER BY created_at DESC, short_id DESC LIMIT ?
+			""";
+	private static final String CELEBRITIES_NEXT_PAGE_SQL = """
+			SELECT short_id, created_at FROM shorts
+			WHERE user_id = ANY(?) AND user_id IN (SELECT followee FROM following WHERE follower = ?)
+			AND (created_at, short_id) < (?, ?)
+			ORDER BY created_at DESC, short_id DESC LIMIT ?
+			""";
+
+	static final Comparator<Cursor.Keyset> NEWEST_FIRST = Comparator.comparingLong(Cursor.Keyset::timestamp)
+			.thenComparing(Cursor.Keyset::id).reversed();
+
+	private final SqlFeed sql;
+
+	public PushFeed(SqlFeed sql) {
+		this.sql = sql;
+	}
+
+	@Override
+	public List<Cursor.Keyset> feed(String userId, Cursor.Keyset after, int limit) throws SQLException {
+		List<Cursor.Keyset> pushed;
+		Set<String> celebrities;
+		boolean truncated;
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var key = FEED_PREFIX + userId;
+			if (!jedis.exists(key))
+				rebuild(jedis, key, userId);
+			jedis.expire(key, TTL);
+
+			pushed = range(jedis, key, after, limit);
+			truncated = pushed.size() < limit && jedis.zcard(key) >= MAX_LENGTH;
+			celebrities = jedis.smembers(CELEBRITIES);
+		} catch (JedisException e) {
+			Log.warning("Unable to read feed of " + userId + " from Redis, using the database - " + e.getMessage());
+			return sql.feed(userId, after, limit);
+		}
+
+		var res = celebrities.isEmpty() ? pushed : merge(pushed, celebrityShorts(userId, celebrities, after, limit), limit);
+		if (truncated) {
+			// The sorted set ran out; older entries only exist in the database.
+			var boundary = pushed.isEmpty() ? after : pushed.get(pushed.size() - 1);
+			if (boundary != null)
+				res = new ArrayList<>(res.stream().filter(e -> NEWEST_FIRST.compare(e, boundary) <= 0).toList());
+			Metrics.counter("feed.push.database").increment();
+			return merge(res, sql.feed(userId, boundary, limit - res.size()), limit);
+		}
+		return res;
+	}
+
+	@Override
+	public void created(Short shrt) {
+		var owner = shrt.getOwnerId();
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			if (jedis.sismember(CELEBRITIES, owner))
+				return;
+
+			var followers = followers(owner, CELEBRITY_FOLLOWERS + 1);
+			if (followers.size() > CELEBRITY_FOLLOWERS) {
+				// Once a celebrity, always merged at read time, so no short of the owner is lost.
+				jedis.sadd(CELEBRITIES, owner);
+				Metrics.counter("feed.push.celebrities").increment();
+				return;
+			}
+
+			var score = Long.toString(shrt.getTimestamp() * 1000);
+			var maxLength = Integer.toString(MAX_LENGTH);
+			var pipeline = jedis.pipelined();
+			for (var follower : followers)
+				pipeline.eval(PUSH_IF_PRESENT, 1, FEED_PREFIX + follower, score, shrt.getid(), maxLength);
+			pipeline.sync();
+			Metrics.counter("feed.push.fanout").add(followers.size());
+		} catch (JedisException | SQLException e) {
+			Log.warning("Unable to push short " + shrt.getid() + " to the feeds of the followers - " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void deleted(Short shrt) {
+		// Also for celebrities: their shorts from before they became one were pushed.
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			var pipeline = jedis.pipelined();
+			for (var follower : followers(shrt.getOwnerId(), Integer.MAX_VALUE))
+				pipeline.zrem(FEED_PREFIX + follower, shrt.getid());
+			pipeline.sync();
+		} catch (JedisException | SQLException e) {
+			Log.warning("Unable to remove short " + shrt.getid() + " from the feeds of the followers - " + e.getMessage());
+		}
+	}
+
+	@Override
+	public void followed(String follower, String followee, boolean isFollowing) {
+		var key = FEED_PREFIX + follower;
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			if (!jedis.exists(key) || jedis.sismember(CELEBRITIES, followee))
+				return;
+
+			if (isFollowing) {
+				var entries = new HashMap<String, Double>();
+				for (var e : recentShortsOf(followee))
+					entries.put(e.id(), (double) e.timestamp());
+				if (!entries.isEmpty()) {
+					jedis.zadd(key, entries);
+					jedis.zremrangeByRank(key, 0, -MAX_LENGTH - 1);
+				}
+			} else
+				removeAuthor(jedis, key, followee);
+		} catch (JedisException | SQLException e) {
+			// The feed can no longer be trusted; it is rebuilt on the next read.
+			Log.warning("Unable to update the feed of " + follower + " - " + e.getMessage());
+			dropFeed(follower);
+		}
+	}
+
+	@Override
+	public void deletingUser(String userId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(FEED_PREFIX + userId);
+			jedis.srem(CELEBRITIES, userId);
+			for (var follower : followers(userId, Integer.MAX_VALUE)) {
+				var key = FEED_PREFIX + follower;
+				if (jedis.exists(key))
+					removeAuthor(jedis, key, userId);
+			}
+		} catch (JedisException | SQLException e) {
+			Log.warning("Unable to remove the shorts of " + userId + " from the feeds - " + e.getMessage());
+		}
+	}
+
+	private void rebuild(Jedis jedis, String key, String userId) throws SQLException {
+		Metrics.counter("feed.push.rebuilds").increment();
+		// Created before querying the database, so shorts created meanwhile are pushed to it.
+		jedis.zadd(key, 0, EMPTY);
+		var entries = new HashMap<String, Double>();
+		for (var e : sql.feed(userId, null, MAX_LENGTH))
+			entries.put(e.id(), (double) e.timestamp());
+		if (!entries.isEmpty())
+			jedis.zadd(key, entries);
+	}
+
+	// Entries older than after, newest first. Equal scores come in reverse order of the ids,
+	// the same order as the database, so the entries sharing the score of after are skipped.
+	private List<Cursor.Keyset> range(Jedis jedis, String key, Cursor.Keyset after, int limit) {
+		var max = after == null ? "+inf" : Long.toString(after.timestamp());
+		var ties = after == null ? 0 : (int) jedis.zcount(key, max, max);
+		// The set never holds more than MAX_LENGTH entries, however many are asked for.
+		int count = Math.min(limit, MAX_LENGTH) + ties;
+		var res = new ArrayList<Cursor.Keyset>(Math.min(count, 1024));
+		for (var t : jedis.zrevrangeByScoreWithScores(key, max, "(0", 0, count)) {
+			var e = new Cursor.Keyset((long) t.getScore(), t.getElement());
+			if (after != null && NEWEST_FIRST.compare(e, after) <= 0)
+				continue;
+			if (res.size() == limit)
+				break;
+			res.add(e);
+		}
+		return res;
+	}
+
+	private List<Cursor.Keyset> celebrityShorts(String userId, Set<String> celebrities, Cursor.Keyset after, int limit) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(after == null ? CELEBRITIES_FIRST_PAGE_SQL : CELEBRITIES_NEXT_PAGE_SQL)) {
+			int i = 1;
+			stmt.setArray(i++, conn.createArrayOf("varchar", celebrities.toArray()));
+			stmt.setString(i++, userId);
+			if (after != null) {
+				stmt.setTimestamp(i++, SqlFeed.fromMicros(after.timestamp()));
+				stmt.setString(i++, after.id());
+			}
+			stmt.setInt(i, limit);
+			return SqlFeed.entries(stmt);
+		}
+	}
+
+	private List<Cursor.Keyset> recentShortsOf(String userId) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(AUTHOR_SQL)) {
+			stmt.setString(1, userId);
+			stmt.setInt(2, MAX_LENGTH);
+			return SqlFeed.entries(stmt);
+		}
+	}
+
+	private List<String> followers(String userId, int limit) throws SQLException {
+		var res = new ArrayList<String>();
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(FOLLOWERS_SQL)) {
+			stmt.setString(1, userId);
+			stmt.setInt(2, limit);
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next())
+					res.add(rs.getString(1));
+			}
+		}
+		return res;
+	}
+
+	// Short ids are "<ownerId>+<uuid>", so the shorts of an owner can be found in the feed itself.
+	private static void removeAuthor(Jedis jedis, String key, String author) {
+		var prefix = author + "+";
+		var ids = jedis.zrange(key, 0, -1).stream()
+				.filter(id -> id.startsWith(prefix) && id.indexOf('+', prefix.length()) < 0)
+				.toArray(String[]::new);
+		if (ids.length > 0)
+			jedis.zrem(key, ids);
+	}
+
+	private static void dropFeed(String userId) {
+		try (Jedis jedis = RedisCache.getCachePool().getResource()) {
+			jedis.del(FEED_PREFIX + userId);
+		} catch (JedisException e) {
+			Log.warning("Unable to drop the feed of " + userId + " - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Merges two lists of entries sorted newest first, without repetitions.
+	 */
+	static List<Cursor.Keyset> merge(List<Cursor.Keyset> a, List<Cursor.Keyset> b, int limit) {
+		var res = new ArrayList<Cursor.Keyset>(Math.min(limit, a.size() + b.size()));
+		var seen = new HashSet<String>();
+		int i = 0, j = 0;
+		while (res.size() < limit && (i < a.size() || j < b.size())) {
+			Cursor.Keyset e;
+			if (j == b.size() || (i < a.size() && NEWEST_FIRST.compare(a.get(i), b.get(j)) <= 0))
+				e = a.get(i++);
+			else
+				e = b.get(j++);
+			if (seen.add(e.id()))
+				res.add(e);
+		}
+		return res;
+	}
+}
@@ -0,0 +1,71 @@
+package tukano.impl.feed;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import dataBaseConection.DB_PostgresSQL;
+import tukano.impl.Cursor;
+
+/**
+ * The feed computed by the database on every read, with a single query over the
+ * shorts of every followee. Relies on an index on shorts(user_id, created_at, short_id).
+ */
+public class SqlFeed implements FeedEngine {
+
+	private static final String FEED_FIRST_PAGE_SQL = """
+			SELECT short_id, created_at FROM shorts
+			WHERE user_id IN (SELECT followee FROM following WHERE follower = ?)
+			ORDER BY created_at DESC, short_id DESC LIMIT ?
+			""";
+	private static final String FEED_NEXT_PAGE_SQL = """
+			SELECT short_id, created_at FROM shorts
+			WHERE user_id IN (SELECT followee FROM following WHERE follower = ?)
+			AND (created_at, short_id) < (?, ?)
+			ORDER BY created_at DESC, short_id DESC LIMIT ?
+			""";
+
+	@Override
+	public List<Cursor.Keyset> feed(String userId, Cursor.Keyset after, int limit) throws SQLException {
+		try (Connection conn = DB_PostgresSQL.getConnection();
+			 PreparedStatement stmt = conn.prepareStatement(after == null ? FEED_FIRST_PAGE_SQL : FEED_NEXT_PAGE_SQL)) {
+			int i = 1;
+			stmt.setString(i++, userId);
+			if (after != null) {
+				stmt.setTimestamp(i++, fromMicros(after.timestamp()));
+				stmt.setString(i++, after.id());
+			}
+			stmt.setInt(i, limit);
+			return entries(stmt);
+		}
+	}
+
+	@Override
+	public boolean cacheable() {
+		return true;
+	}
+
+	static List<Cursor.Keyset> entries(PreparedStatement stmt) throws SQLException {
+		var res = new ArrayList<Cursor.Keyset>();
+		try (ResultSet rs = stmt.executeQuery()) {
+			while (rs.next())
+				res.add(new Cursor.Keyset(toMicros(rs.getTimestamp("created_at")), rs.getString("short_id")));
+		}
+		return res;
+	}
+
+	// created_at has microsecond precision in Postgres; so do the feed entries
+	static long toMicros(Timestamp ts) {
+		return Math.floorDiv(ts.getTime(), 1000) * 1_000_000 + ts.getNanos() / 1000;
+	}
+
+	static Timestamp fromMicros(long micros) {
+		var ts = new Timestamp(Math.floorDiv(micros, 1_000_000) * 1000);
+		ts.setNanos(Math.floorMod(micros, 1_000_000) * 1000);
+		return ts;
+	}
+}
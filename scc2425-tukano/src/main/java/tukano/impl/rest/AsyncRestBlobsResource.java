@@ -0,0 +1,49 @@
+package tukano.impl.rest;
+
+import java.io.InputStream;
+
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.core.Response.Status;
+import tukano.api.AsyncBlobs;
+import tukano.api.Result;
+import tukano.api.rest.AsyncRestBlobs;
+import tukano.impl.AsyncJavaBlobs;
+import tukano.impl.rest.utils.ByteRange;
+
+@Singleton
+public class AsyncRestBlobsResource extends RestResource implements AsyncRestBlobs {
+
+	final AsyncBlobs impl;
+
+	public AsyncRestBlobsResource() {
+		this.impl = AsyncJavaBlobs.getInstance();
+	}
+
+	@Override
+	public void upload(String blobId, InputStream bytes, String token, AsyncResponse ar) {
+		super.resume(ar, impl.upload(blobId, bytes, token));
+	}
+
+	@Override
+	public void download(String blobId, String token, String range, String ifRange, AsyncResponse ar) {
+		var r = ByteRange.parse( range );
+		if( r == null ) {
+			ar.resume(new WebApplicationException( Status.REQUESTED_RANGE_NOT_SATISFIABLE ));
+			return;
+		}
+		super.resume(ar, impl.download( blobId, r.offset(), r.length(), ifRange, token )
+				.thenApply( res -> Result.errorOrResult( res, content -> Result.ok( RestBlobsResource.toResponse( content, ! r.isAll())))));
+	}
+
+	@Override
+	public void delete(String blobId, String token, AsyncResponse ar) {
+		super.resume(ar, impl.delete( blobId, token ));
+	}
+
+	@Override
+	public void deleteAllBlobs(String userId, String token, AsyncResponse ar) {
+		super.resume(ar, impl.deleteAllBlobs( userId, token ));
+	}
+}
@@ -0,0 +1,87 @@
+package tukano.impl.rest;
+
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.container.AsyncResponse;
+import tukano.api.AsyncShorts;
+import tukano.api.rest.AsyncRestShorts;
+import tukano.impl.AsyncJavaShorts;
+
+@Singleton
+public class AsyncRestShortsResource extends RestResource implements AsyncRestShorts {
+
+	final AsyncShorts impl;
+
+	public AsyncRestShortsResource() {
+		this.impl = AsyncJavaShorts.getInstance();
+	}
+
+	@Override
+	public void createShort(String userId, String password, AsyncResponse ar) {
+		super.resume(ar, impl.createShort(userId, password));
+	}
+
+	@Override
+	public void deleteShort(String shortId, String password, AsyncResponse ar) {
+		super.resume(ar, impl.deleteShort(shortId, password));
+	}
+
+	@Override
+	public void getShort(String shortId, AsyncResponse ar) {
+		super.resume(ar, impl.getShort(shortId));
+	}
+
+	@Override
+	public void getShorts(String userId, AsyncResponse ar) {
+		super.resume(ar, impl.getShorts(userId));
+	}
+
+	@Override
+	public void getShortsPage(String userId, String cursor, int limit, AsyncResponse ar) {
+		super.resume(ar, impl.getShorts(userId, cursor, limit));
+	}
+
+	@Override
+	public void follow(String userId1, String userId2, boolean isFollowing, String password, AsyncResponse ar) {
+		super.resume(ar, impl.follow(userId1, userId2, isFollowing, password));
+	}
+
+	@Override
+	public void followers(String userId, String password, AsyncResponse ar) {
+		super.resume(ar, impl.followers(userId, password));
+	}
+
+	@Override
+	public void followersPage(String userId, String password, String cursor, int limit, AsyncResponse ar) {
+		super.resume(ar, impl.followers(userId, password, cursor, limit));
+	}
+
+	@Override
+	public void like(String shortId, String userId, boolean isLiked, String password, AsyncResponse ar) {
+		super.resume(ar, impl.like(shortId, userId, isLiked, password));
+	}
+
+	@Override
+	public void likes(String shortId, String password, AsyncResponse ar) {
+		super.resume(ar, impl.likes(shortId, password));
+	}
+
+	@Override
+	public void likesPage(String shortId, String password, String cursor, int limit, AsyncResponse ar) {
+		super.resume(ar, impl.likes(shortId, password, cursor, limit));
+	}
+
+	@Override
+	public void getFeed(String userId, String password, AsyncResponse ar) {
+		super.resume(ar, impl.getFeed(userId, password));
+	}
+
+	@Override
+	public void getFeedPage(String userId, String password, String cursor, int limit, AsyncResponse ar) {
+		super.resume(ar, impl.getFeed(userId, password, cursor, limit));
+	}
+
+	@Override
+	public void deleteAllShorts(String userId, String password, String token, AsyncResponse ar) {
+		super.resume(ar, impl.deleteAllShorts(userId, password, token));
+	}
+}
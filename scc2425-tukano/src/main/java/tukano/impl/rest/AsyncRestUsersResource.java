@@ -0,0 +1,58 @@
+package tukano.impl.rest;
+
+import jakarta.inject.Singleton;
+import jakarta.ws.rs.container.AsyncResponse;
+import tukano.api.AsyncUsers;
+import tukano.api.User;
+import tukano.api.rest.AsyncRestUsers;
+import tukano.impl.AsyncJavaUsers;
+
+@Singleton
+public class AsyncRestUsersResource extends RestResource implements AsyncRestUsers {
+
+	final AsyncUsers impl;
+
+	public AsyncRestUsersResource() {
+		this.impl = AsyncJavaUsers.getInstance();
+	}
+
+	@Override
+	public void createUser(User user, AsyncResponse ar) {
+		super.resume(ar, impl.createUser( user));
+	}
+
+	@Override
+	public void getUser(String name, String pwd, AsyncResponse ar) {
+		super.resume(ar, impl.getUser(name, pwd));
+	}
+
+	@Override
+	public void login(String name, String pwd, AsyncResponse ar) {
+		super.resume(ar, impl.login(name, pwd));
+	}
+
+	@Override
+	public void logout(String name, String pwd, AsyncResponse ar) {
+		super.resume(ar, impl.logout(name, pwd));
+	}
+
+	@Override
+	public void updateUser(String name, String pwd, User user, AsyncResponse ar) {
+		super.resume(ar, impl.updateUser(name, pwd, user));
+	}
+
+	@Override
+	public void deleteUser(String name, String pwd, AsyncResponse ar) {
+		super.resume(ar, impl.deleteUser(name, pwd));
+	}
+
+	@Override
+	public void searchUsers(String pattern, AsyncResponse ar) {
+		super.resume(ar, impl.searchUsers( pattern));
+	}
+
+	@Override
+	public void searchUsersPage(String pattern, String cursor, int limit, AsyncResponse ar) {
+		super.resume(ar, impl.searchUsers( pattern, cursor, limit));
+	}
+}
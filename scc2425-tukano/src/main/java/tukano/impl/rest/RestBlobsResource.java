@@ -1,13 +1,28 @@
 package tukano.impl.rest;
 
+import static java.lang.String.format;
+
+import java.io.InputStream;
+
 import jakarta.inject.Singleton;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.Status;
+import tukano.api.BlobContent;
 import tukano.api.Blobs;
 import tukano.api.rest.RestBlobs;
 import tukano.impl.JavaBlobs;
+import tukano.impl.rest.utils.ByteRange;
+import utils.IO;
 
 @Singleton
 public class RestBlobsResource extends RestResource implements RestBlobs {
 
+	private static final String CONTENT_RANGE = "Content-Range";
+	private static final String ACCEPT_RANGES = "Accept-Ranges";
+
 	final Blobs impl;
 	
 	public RestBlobsResource() {
@@ -15,13 +30,41 @@ public class RestBlobsResource extends RestResource implements RestBlobs {
 	}
 	
 	@Override
-	public void upload(String blobId, byte[] bytes, String token) {
+	public void upload(String blobId, InputStream bytes, String token) {
 		super.resultOrThrow( impl.upload(blobId, bytes, token));
 	}
 
 	@Override
-	public byte[] download(String blobId, String token) {
-		return super.resultOrThrow( impl.download( blobId, token ));
+	public Response download(String blobId, String token, String range, String ifRange) {
+		var r = ByteRange.parse( range );
+		if( r == null )
+			throw new WebApplicationException( Status.REQUESTED_RANGE_NOT_SATISFIABLE );
+
+		return toResponse( super.resultOrThrow( impl.download( blobId, r.offset(), r.length(), ifRange, token )), ! r.isAll());
+	}
+
+	/**
+	 * 206 with the range, or 200 with the whole blob; 416 if the range starts past the end.
+	 */
+	static Response toResponse(BlobContent content, boolean ranged) {
+		if (ranged && content.length() == 0) {
+			IO.close(content.stream());
+			return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+					.header(CONTENT_RANGE, "bytes */" + content.size())
+					.build();
+		}
+
+		var res = content.isPartial()
+				? Response.status(Status.PARTIAL_CONTENT).header(CONTENT_RANGE,
+						format("bytes %d-%d/%d", content.offset(), content.offset() + content.length() - 1, content.size()))
+				: Response.ok();
+
+		return res.entity(streaming(content.stream()))
+				.type(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+				.header(HttpHeaders.CONTENT_LENGTH, content.length())
+				.header(ACCEPT_RANGES, "bytes")
+				.header(HttpHeaders.ETAG, content.version())
+				.build();
 	}
 
 	@Override
@@ -1,7 +1,12 @@
 package tukano.impl.rest;
 
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
+
 import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import tukano.api.Result;
 
 public class RestResource {
@@ -17,6 +22,32 @@ public class RestResource {
 			throw new WebApplicationException(statusCodeFrom(result));
 	}
 
+	/**
+	 * Writes the stream to the response as it is read, closing it at the end.
+	 */
+	protected static StreamingOutput streaming(InputStream in) {
+		return out -> {
+			try (in) {
+				in.transferTo(out);
+			}
+		};
+	}
+
+	/**
+	 * Resumes a suspended request once the result is available, either with the value,
+	 * or with the JAX-RS Exception matching the error code...
+	 */
+	protected <T> void resume(AsyncResponse ar, CompletionStage<Result<T>> result) {
+		result.whenComplete((res, x) -> {
+			if (x != null)
+				ar.resume(new WebApplicationException(x, Status.INTERNAL_SERVER_ERROR));
+			else if (res.isOK())
+				ar.resume(res.value());
+			else
+				ar.resume(new WebApplicationException(statusCodeFrom(res)));
+		});
+	}
+
 	/**
 	 * Translates a Result<T> to a HTTP Status code
 	 */
@@ -28,6 +59,8 @@ public class RestResource {
 			case BAD_REQUEST -> Status.BAD_REQUEST;
 			case INTERNAL_ERROR -> Status.INTERNAL_SERVER_ERROR;
 			case NOT_IMPLEMENTED -> Status.NOT_IMPLEMENTED;
+			case TIMEOUT -> Status.SERVICE_UNAVAILABLE;
+			case TOO_LARGE -> Status.REQUEST_ENTITY_TOO_LARGE;
 			case OK -> result.value() == null ? Status.NO_CONTENT : Status.OK;
 			default -> Status.INTERNAL_SERVER_ERROR;
 		};
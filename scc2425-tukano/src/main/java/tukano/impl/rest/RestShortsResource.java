@@ -3,6 +3,7 @@ package tukano.impl.rest;
 import java.util.List;
 
 import jakarta.inject.Singleton;
+import tukano.api.Page;
 import tukano.api.Short;
 import tukano.api.Shorts;
 import tukano.api.rest.RestShorts;
@@ -32,6 +33,11 @@ public class RestShortsResource extends RestResource implements RestShorts {
 		return super.resultOrThrow( impl.getShorts(userId));
 	}
 
+	@Override
+	public Page<String> getShortsPage(String userId, String cursor, int limit) {
+		return super.resultOrThrow( impl.getShorts(userId, cursor, limit));
+	}
+
 	@Override
 	public void follow(String userId1, String userId2, boolean isFollowing, String password) {
 		super.resultOrThrow( impl.follow(userId1, userId2, isFollowing, password));
@@ -42,6 +48,11 @@ public class RestShortsResource extends RestResource implements RestShorts {
 		return super.resultOrThrow( impl.followers(userId, password));
 	}
 
+	@Override
+	public Page<String> followersPage(String userId, String password, String cursor, int limit) {
+		return super.resultOrThrow( impl.followers(userId, password, cursor, limit));
+	}
+
 	@Override
 	public void like(String shortId, String userId, boolean isLiked, String password) {
 		super.resultOrThrow( impl.like(shortId, userId, isLiked, password));
@@ -52,11 +63,21 @@ public class RestShortsResource extends RestResource implements RestShorts {
 		return super.resultOrThrow( impl.likes(shortId, password));
 	}
 
+	@Override
+	public Page<String> likesPage(String shortId, String password, String cursor, int limit) {
+		return super.resultOrThrow( impl.likes(shortId, password, cursor, limit));
+	}
+
 	@Override
 	public List<String> getFeed(String userId, String password) {
 		return super.resultOrThrow( impl.getFeed(userId, password));
 	}
 
+	@Override
+	public Page<String> getFeedPage(String userId, String password, String cursor, int limit) {
+		return super.resultOrThrow( impl.getFeed(userId, password, cursor, limit));
+	}
+
 	@Override
 	public void deleteAllShorts(String userId, String password, String token) {
 		super.resultOrThrow( impl.deleteAllShorts(userId, password, token));
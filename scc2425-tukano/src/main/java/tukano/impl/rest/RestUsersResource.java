@@ -3,6 +3,7 @@ package tukano.impl.rest;
 import java.util.List;
 
 import jakarta.inject.Singleton;
+import tukano.api.Page;
 import tukano.api.User;
 import tukano.api.Users;
 import tukano.api.rest.RestUsers;
@@ -26,6 +27,16 @@ public class RestUsersResource extends RestResource implements RestUsers {
 		return super.resultOrThrow( impl.getUser(name, pwd));
 	}
 	
+	@Override
+	public String login(String name, String pwd) {
+		return super.resultOrThrow( impl.login(name, pwd));
+	}
+
+	@Override
+	public void logout(String name, String pwd) {
+		super.resultOrThrow( impl.logout(name, pwd));
+	}
+	
 	@Override
 	public User updateUser(String name, String pwd, User user) {
 		return super.resultOrThrow( impl.updateUser(name, pwd, user));
@@ -40,4 +51,9 @@ public class RestUsersResource extends RestResource implements RestUsers {
 	public List<User> searchUsers(String pattern) {
 		return super.resultOrThrow( impl.searchUsers( pattern));
 	}
+
+	@Override
+	public Page<User> searchUsersPage(String pattern, String cursor, int limit) {
+		return super.resultOrThrow( impl.searchUsers( pattern, cursor, limit));
+	}
 }
@@ -10,6 +10,8 @@ import org.glassfish.jersey.server.ResourceConfig;
 
 import jakarta.ws.rs.core.Application;
 import tukano.impl.Token;
+import tukano.impl.rest.utils.JacksonMapperResolver;
+import tukano.impl.rest.utils.RequestExecutors;
 import utils.Args;
 import utils.IP;
 
@@ -23,6 +25,11 @@ public class TukanoRestServer extends Application {
 	public static final int PORT = 8080;
 
 	public static String serverURI;
+
+	// Request executor: bounded (default), virtual or default; see RequestExecutors
+	static String executor = RequestExecutors.BOUNDED;
+	static int threads = 64;
+	static int queueSize = 1000;
 	private Set<Class<?>> resources = new HashSet<>();
 			
 	static {
@@ -48,8 +55,11 @@ public class TukanoRestServer extends Application {
 		config.register(RestBlobsResource.class);
 		config.register(RestUsersResource.class); 
 		config.register(RestShortsResource.class);
+		config.register(JacksonMapperResolver.class);
 		
-		JdkHttpServerFactory.createHttpServer( URI.create(serverURI.replace(IP.hostname(), INETADDR_ANY)), config);
+		var server = JdkHttpServerFactory.createHttpServer( URI.create(serverURI.replace(IP.hostname(), INETADDR_ANY)), config, false);
+		server.setExecutor( RequestExecutors.create(executor, threads, queueSize));
+		server.start();
 		
 		Log.info(String.format("Tukano Server ready @ %s\n",  serverURI));
 	}
@@ -59,6 +69,9 @@ public class TukanoRestServer extends Application {
 		Args.use(args);
 		
 		Token.setSecret( Args.valueOf("-secret", ""));
+		executor = Args.valueOf("-executor", executor);
+		threads = Args.valueOf("-threads", threads);
+		queueSize = Args.valueOf("-queue", queueSize);
 //		Props.load( Args.valueOf("-props", "").split(","));
 		
 		new TukanoRestServer().start();
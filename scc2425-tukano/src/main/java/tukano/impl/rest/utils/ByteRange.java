@@ -0,0 +1,52 @@
+package tukano.impl.rest.utils;
+
+/**
+ * A single range of a Range: bytes=... request header (RFC 9110, section 14).
+ *
+ * @param offset the first byte, or if negative, the range is the last -offset bytes
+ * @param length the number of bytes, or -1 for up to the end
+ */
+public record ByteRange(long offset, long length) {
+
+	public static final ByteRange ALL = new ByteRange(0, -1);
+
+	private static final String BYTES = "bytes=";
+
+	public boolean isAll() {
+		return offset == 0 && length < 0;
+	}
+
+	/**
+	 * Headers that are missing, malformed or in other units are ignored, as the RFC allows,
+	 * and yield ALL.
+	 *
+	 * @return the range, or null if there are several ranges or the range cannot be satisfied
+	 */
+	public static ByteRange parse(String header) {
+		if (header == null || !header.regionMatches(true, 0, BYTES, 0, BYTES.length()))
+			return ALL;
+
+		var spec = header.substring(BYTES.length()).trim();
+		if (spec.indexOf(',') >= 0)
+			return null;
+
+		int dash = spec.indexOf('-');
+		if (dash < 0)
+			return ALL;
+		try {
+			var first = spec.substring(0, dash).trim();
+			var last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				return suffix > 0 ? new ByteRange(-suffix, -1) : null;
+			}
+			long from = Long.parseLong(first);
+			if (last.isEmpty())
+				return new ByteRange(from, -1);
+			long to = Long.parseLong(last);
+			return from >= 0 && to >= from ? new ByteRange(from, to - from + 1) : ALL;
+		} catch (NumberFormatException e) {
+			return ALL;
+		}
+	}
+}
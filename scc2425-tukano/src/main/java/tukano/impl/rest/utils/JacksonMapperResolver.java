@@ -0,0 +1,20 @@
+package tukano.impl.rest.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.ws.rs.ext.ContextResolver;
+import jakarta.ws.rs.ext.Provider;
+import utils.JSON;
+
+/**
+ * Hands the Jackson providers of Jersey and RESTEasy the mapper of utils.JSON, so request and
+ * response bodies share its configuration and its cached (de)serializers.
+ */
+@Provider
+public class JacksonMapperResolver implements ContextResolver<ObjectMapper> {
+
+	@Override
+	public ObjectMapper getContext(Class<?> type) {
+		return JSON.mapper();
+	}
+}
@@ -0,0 +1,92 @@
+package tukano.impl.rest.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import utils.Metrics;
+
+/**
+ * Executors for the requests of the embedded HTTP server.
+ *
+ * Without one, the JDK HttpServer runs every handler on its single dispatcher thread, so
+ * requests blocked on JDBC, Redis or Azure wait for each other.
+ *
+ * - bounded: a fixed pool of platform threads with a bounded queue. When the queue is
+ *   full the request is rejected and the server closes its connection.
+ * - virtual: one virtual thread per request (needs a Java 21 runtime; falls back to bounded).
+ * - default: the HttpServer default, i.e. the dispatcher thread.
+ *
+ * Exposes the metrics http.queued, http.active and http.rejected.
+ */
+public class RequestExecutors {
+	private static final Logger Log = Logger.getLogger(RequestExecutors.class.getName());
+
+	public static final String BOUNDED = "bounded";
+	public static final String VIRTUAL = "virtual";
+	public static final String DEFAULT = "default";
+
+	/**
+	 * @return the executor, or null for the HttpServer default
+	 */
+	public static Executor create(String mode, int threads, int queueSize) {
+		Log.info(String.format("HTTP request executor: %s (threads = %d, queue = %d)\n", mode, threads, queueSize));
+		return switch (mode) {
+		case DEFAULT -> null;
+		case VIRTUAL -> {
+			var virtual = virtualThreadPerTask();
+			yield virtual != null ? counting(virtual) : bounded(threads, queueSize);
+		}
+		default -> bounded(threads, queueSize);
+		};
+	}
+
+	static Executor bounded(int threads, int queueSize) {
+		var rejected = Metrics.counter("http.rejected");
+		var counter = new AtomicInteger();
+		var pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+			var t = new Thread(r, "http-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, (r, executor) -> {
+			rejected.increment();
+			throw new RejectedExecutionException("Request queue is full");
+		});
+		pool.allowCoreThreadTimeOut(true);
+		Metrics.gauge("http.queued", () -> pool.getQueue().size());
+		Metrics.gauge("http.active", pool::getActiveCount);
+		return pool;
+	}
+
+	// Virtual threads have no queue; every request runs at once, so only the in-flight count is kept.
+	static Executor counting(ExecutorService executor) {
+		var active = new AtomicInteger();
+		Metrics.gauge("http.queued", () -> 0);
+		Metrics.gauge("http.active", active::get);
+		return task -> executor.execute(() -> {
+			active.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				active.decrementAndGet();
+			}
+		});
+	}
+
+	// Looked up reflectively, as the code is compiled for Java 17.
+	static ExecutorService virtualThreadPerTask() {
+		try {
+			Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			Log.warning("Virtual threads are not available in this runtime, using a bounded pool instead");
+			return null;
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package tukano.impl.storage;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+import static tukano.api.Result.ErrorCode.CONFLICT;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+import static tukano.api.Result.ErrorCode.TOO_LARGE;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobContainerClientBuilder;
+import com.azure.storage.blob.models.BlobErrorCode;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+
+import tukano.api.BlobContent;
+import tukano.api.Result;
+
+/**
+ * Blobs kept in an Azure Storage container.
+ *
+ * Uploads are sent in blocks of BLOB_BLOCK_BYTES, at most BLOB_UPLOAD_CONCURRENCY at a time,
+ * which bounds the memory used by each transfer; downloads are read in chunks of the same size.
+ * A blob is only created if it does not exist yet (If-None-Match: *), so concurrent uploads
+ * of the same blob cannot overwrite each other.
+ *
+ * The SHA-256 of each blob is kept in its metadata (sha256) and in a local index, so
+ * uploading a blob again is decided with at most one metadata lookup.
+ */
+public class AzureBlobStorage implements BlobStorage {
+	private static final Logger Log = Logger.getLogger(AzureBlobStorage.class.getName());
+
+	private static final long BLOCK_SIZE = Long.getLong("BLOB_BLOCK_BYTES", 4 * 1024 * 1024);
+	private static final int CONCURRENCY = Integer.getInteger("BLOB_UPLOAD_CONCURRENCY", 2);
+
+	private static final String SHA256 = "sha256";
+
+	private final BlobContainerClient container;
+	private final DigestIndex index = new DigestIndex();
+
+	public AzureBlobStorage(String connectionString, String containerName) {
+		this.container = new BlobContainerClientBuilder()
+				.connectionString(connectionString)
+				.containerName(containerName)
+				.buildClient();
+	}
+
+	@Override
+	public Result<Void> write(String path, byte[] bytes) {
+		return write(path, new ByteArrayInputStream(bytes), Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<Void> write(String path, InputStream in, long maxBytes) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var bc = container.getBlobClient(path);
+		try (var hin = new HashingInputStream(in, maxBytes)) {
+			var existing = storedDigest(bc, path);
+			if (existing != null)
+				return sameContents(existing, hin.drain());
+
+			var options = new BlobParallelUploadOptions(hin)
+					.setParallelTransferOptions(new ParallelTransferOptions()
+							.setBlockSizeLong(BLOCK_SIZE)
+							.setMaxSingleUploadSizeLong(BLOCK_SIZE)
+							.setMaxConcurrency(CONCURRENCY))
+					.setRequestConditions(new BlobRequestConditions().setIfNoneMatch("*"));
+			try {
+				var etag = bc.uploadWithResponse(options, null, Context.NONE).getValue().getETag();
+				var digest = hin.sha256Digest();
+				index.put(path, digest);
+				storeDigest(bc, path, digest, etag);
+				return ok();
+			} catch (BlobStorageException e) {
+				// Someone else created it meanwhile.
+				if (BlobErrorCode.BLOB_ALREADY_EXISTS.equals(e.getErrorCode()) || e.getStatusCode() == 409 || e.getStatusCode() == 412)
+					return sameContents(storedDigest(bc, path), hin.drain());
+				throw e;
+			}
+		} catch (IOException | RuntimeException e) {
+			if (tooLarge(e))
+				return error(TOO_LARGE);
+			Log.warning("Unable to upload blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<Void> delete(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		try {
+			index.remove(path);
+			return container.getBlobClient(path).deleteIfExists() ? ok() : error(NOT_FOUND);
+		} catch (RuntimeException e) {
+			Log.warning("Unable to delete blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<byte[]> read(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		try {
+			return ok(container.getBlobClient(path).downloadContent().toBytes());
+		} catch (BlobStorageException e) {
+			return errorFrom(path, e);
+		} catch (RuntimeException e) {
+			Log.warning("Unable to read blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		var res = open(path);
+		if (!res.isOK())
+			return error(res.error());
+
+		try (var in = res.value()) {
+			var chunk = new byte[(int) Math.min(BLOCK_SIZE, 64 * 1024)];
+			int n;
+			while ((n = in.read(chunk)) > 0)
+				sink.accept(Arrays.copyOf(chunk, n));
+			return ok();
+		} catch (IOException | RuntimeException e) {
+			Log.warning("Unable to read blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	/**
+	 * Only the blocks of the range are downloaded. The first one is fetched when the stream
+	 * is opened, along with the properties of the blob, so a missing blob fails here; the
+	 * stream then fails if the blob changes while it is read.
+	 *
+	 * A suffix range needs the size of the blob first, and so a request more.
+	 */
+	@Override
+	public Result<BlobContent> open(String path, long offset, long length) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var bc = container.getBlobClient(path);
+		try {
+			long start = offset < 0 ? Ranges.start(offset, bc.getProperties().getBlobSize()) : offset;
+			var range = length < 0 ? new BlobRange(start) : new BlobRange(start, length);
+
+			var in = bc.openInputStream(new BlobInputStreamOptions().setRange(range));
+			var props = in.getProperties();
+			long size = props.getBlobSize();
+			return ok(new BlobContent(in, start, Ranges.count(start, length, size), size, props.getETag()));
+		} catch (BlobStorageException e) {
+			return e.getStatusCode() == 416 ? pastTheEnd(bc, path) : errorFrom(path, e);
+		} catch (RuntimeException e) {
+			Log.warning("Unable to open blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	private static Result<BlobContent> pastTheEnd(BlobClient bc, String path) {
+		try {
+			var props = bc.getProperties();
+			return ok(new BlobContent(InputStream.nullInputStream(), props.getBlobSize(), 0, props.getBlobSize(), props.getETag()));
+		} catch (BlobStorageException e) {
+			return errorFrom(path, e);
+		} catch (RuntimeException e) {
+			Log.warning("Unable to open blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	private static Result<Void> sameContents(byte[] existing, HashingInputStream uploaded) {
+		return MessageDigest.isEqual(existing, uploaded.sha256Digest()) ? ok() : error(CONFLICT);
+	}
+
+	/**
+	 * @return the SHA-256 of the blob, from the local index or the blob metadata, or null if the blob does not exist
+	 */
+	private byte[] storedDigest(BlobClient bc, String path) throws IOException {
+		var digest = index.get(path);
+		if (digest != null)
+			return digest;
+
+		try {
+			var props = bc.getProperties();
+			var hex = props.getMetadata().get(SHA256);
+			if (hex != null)
+				digest = HexFormat.of().parseHex(hex);
+			else {
+				// Uploaded before the digests were kept in the metadata.
+				try (var existing = bc.openInputStream()) {
+					digest = HashingInputStream.sha256Of(existing);
+				}
+				storeDigest(bc, path, digest, props.getETag());
+			}
+			index.put(path, digest);
+			return digest;
+		} catch (BlobStorageException e) {
+			if (e.getStatusCode() == 404)
+				return null;
+			throw e;
+		}
+	}
+
+	// Conditional on the version just written or read, so it never describes other contents.
+	private static void storeDigest(BlobClient bc, String path, byte[] digest, String etag) {
+		try {
+			bc.setMetadataWithResponse(Map.of(SHA256, HexFormat.of().formatHex(digest)),
+					new BlobRequestConditions().setIfMatch(etag), null, Context.NONE);
+		} catch (RuntimeException e) {
+			Log.warning("Unable to store the digest of blob " + path + ": " + e.getMessage());
+		}
+	}
+
+	// The SDK reads the upload stream on its own threads and wraps what it throws.
+	private static boolean tooLarge(Throwable x) {
+		for (; x != null; x = x.getCause())
+			if (x instanceof HashingInputStream.TooLargeException)
+				return true;
+		return false;
+	}
+
+	private static <T> Result<T> errorFrom(String path, BlobStorageException e) {
+		if (e.getStatusCode() == 404)
+			return error(NOT_FOUND);
+		Log.warning("Blob storage failure for " + path + ": " + e.getMessage());
+		return error(INTERNAL_ERROR);
+	}
+}
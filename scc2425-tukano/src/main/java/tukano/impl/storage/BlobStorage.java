@@ -1,17 +1,55 @@
 package tukano.impl.storage;
 
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 
+import tukano.api.BlobContent;
 import tukano.api.Result;
 
 public interface BlobStorage {
-		
+
 	public Result<Void> write(String path, byte[] bytes );
-		
+
+	/**
+	 * Writes the blob as it streams in, hashing it on the way.
+	 *
+	 * @return OK if the blob is new or has the same contents as the stored one;
+	 * 			CONFLICT if the stored blob differs; TOO_LARGE if it has more than maxBytes
+	 */
+	public Result<Void> write(String path, InputStream in, long maxBytes);
+
 	public Result<Void> delete(String path);
-	
+
+	/**
+	 * Deletes the blobs in parallel, a bounded number at a time.
+	 *
+	 * @return the paths that could not be deleted; missing blobs count as deleted
+	 */
+	public default List<String> deleteAll(Collection<String> paths) {
+		return BulkDelete.run(this::delete, paths);
+	}
+
 	public Result<byte[]> read(String path);
 
 	public Result<Void> read(String path, Consumer<byte[]> sink);
 
+	/**
+	 * Opens the blob for reading; the caller closes the stream.
+	 */
+	public default Result<InputStream> open(String path) {
+		var res = open(path, 0, -1);
+		return res.isOK() ? Result.ok(res.value().stream()) : Result.error(res.error());
+	}
+
+	/**
+	 * Opens a range of the blob for reading, fetching only the bytes of the range.
+	 * The range is cut at the end of the blob; past it, the range is empty.
+	 *
+	 * @param offset the first byte, or if negative, the range is the last -offset bytes
+	 * @param length the number of bytes, or -1 for up to the end
+	 */
+	public Result<BlobContent> open(String path, long offset, long length);
+
 }
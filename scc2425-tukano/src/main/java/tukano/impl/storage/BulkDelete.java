@@ -0,0 +1,70 @@
+package tukano.impl.storage;
+
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import tukano.api.Result;
+import utils.Metrics;
+
+/**
+ * Runs the deletions of {@link BlobStorage#deleteAll(Collection)} in parallel, on a pool of
+ * BLOB_DELETE_PARALLELISM threads shared by all of them, which bounds the load they put
+ * on the storage.
+ */
+final class BulkDelete {
+	private static final Logger Log = Logger.getLogger(BulkDelete.class.getName());
+
+	private static final int PARALLELISM = Integer.getInteger("BLOB_DELETE_PARALLELISM", 16);
+
+	private static final ExecutorService pool = newPool();
+
+	private BulkDelete() {
+	}
+
+	/**
+	 * @return the paths that could not be deleted; missing ones count as deleted
+	 */
+	static List<String> run(Function<String, Result<Void>> delete, Collection<String> paths) {
+		var tasks = new ArrayList<Future<Result<Void>>>(paths.size());
+		for (var path : paths)
+			tasks.add(pool.submit(() -> delete.apply(path)));
+
+		var failed = new ArrayList<String>();
+		int i = 0;
+		for (var path : paths) {
+			try {
+				var res = tasks.get(i++).get();
+				if (!res.isOK() && res.error() != NOT_FOUND)
+					failed.add(path);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				failed.add(path);
+			} catch (ExecutionException e) {
+				Log.warning("Unable to delete blob " + path + ": " + e.getCause());
+				failed.add(path);
+			}
+		}
+		Metrics.counter("blobs.delete.deleted").add(paths.size() - failed.size());
+		Metrics.counter("blobs.delete.failed").add(failed.size());
+		return failed;
+	}
+
+	private static ExecutorService newPool() {
+		var counter = new AtomicInteger();
+		return Executors.newFixedThreadPool(PARALLELISM, r -> {
+			var t = new Thread(r, "blob-delete-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+}
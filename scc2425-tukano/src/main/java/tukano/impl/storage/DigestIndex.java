@@ -0,0 +1,41 @@
+package tukano.impl.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import utils.Metrics;
+
+/**
+ * Local index of the SHA-256 of the blobs most recently written or checked, bounded to
+ * BLOB_DIGEST_INDEX_SIZE entries (least recently used are dropped first).
+ *
+ * Blob ids are never reused with other contents, so an entry stays valid for as long as
+ * the blob exists; storages drop it when they delete the blob.
+ */
+final class DigestIndex {
+
+	private static final int CAPACITY = Integer.getInteger("BLOB_DIGEST_INDEX_SIZE", 10000);
+
+	private final Map<String, byte[]> digests = new LinkedHashMap<>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	synchronized byte[] get(String path) {
+		var digest = digests.get(path);
+		Metrics.counter(digest != null ? "blobs.digest.hits" : "blobs.digest.misses").increment();
+		return digest;
+	}
+
+	synchronized void put(String path, byte[] digest) {
+		digests.put(path, digest);
+	}
+
+	synchronized void remove(String path) {
+		digests.remove(path);
+	}
+}
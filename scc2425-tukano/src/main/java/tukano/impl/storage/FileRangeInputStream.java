@@ -0,0 +1,74 @@
+package tukano.impl.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a range of a file with positional reads (pread), leaving the channel position alone.
+ *
+ * transferTo copies the range to the stream in chunks of CHUNK_SIZE, through a single heap
+ * buffer. This is not zero-copy: the response is an OutputStream, not a channel the kernel
+ * could sendfile to, so each chunk is read into a temporary direct buffer of the JDK, copied
+ * to the heap and written from there.
+ */
+class FileRangeInputStream extends InputStream {
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final long end;
+	private long position;
+
+	FileRangeInputStream(FileChannel channel, long start, long count) {
+		this.channel = channel;
+		this.position = start;
+		this.end = start + count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		var b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (position >= end)
+			return -1;
+		int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+		if (n > 0)
+			position += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		long k = Math.max(0, Math.min(n, end - position));
+		position += k;
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, end - position);
+	}
+
+	@Override
+	public long transferTo(OutputStream out) throws IOException {
+		long start = position;
+		var chunk = new byte[(int) Math.min(CHUNK_SIZE, Math.max(1, end - position))];
+		int n;
+		while ((n = read(chunk, 0, chunk.length)) > 0)
+			out.write(chunk, 0, n);
+		return position - start;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -1,105 +1,349 @@
 package tukano.impl.storage;
 
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static tukano.api.Result.error;
 import static tukano.api.Result.ok;
 import static tukano.api.Result.ErrorCode.BAD_REQUEST;
 import static tukano.api.Result.ErrorCode.CONFLICT;
 import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
 import static tukano.api.Result.ErrorCode.NOT_FOUND;
+import static tukano.api.Result.ErrorCode.TOO_LARGE;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.logging.Logger;
 
+import tukano.api.BlobContent;
 import tukano.api.Result;
-import utils.Hash;
-import utils.IO;
+import utils.ByteBufferInputStream;
+import utils.Metrics;
 
+/**
+ * Blobs kept as files under BLOB_STORAGE_DIR.
+ *
+ * Files are spread over 256 x 256 directories by a hash of their path, so that no directory
+ * grows too large; file names are the URL-encoded paths. Directories are created once and
+ * then remembered, so the hot path makes no mkdirs or exists calls.
+ *
+ * Writes go to a temporary file, which is then atomically renamed into place, so readers
+ * never see a partial blob. Reads are positional and are copied to the response in 64 KB
+ * chunks, without loading the whole blob. Files read more than BLOB_MMAP_AFTER_READS times,
+ * of at most BLOB_MMAP_MAX_BYTES, are memory-mapped, up to BLOB_MMAP_MAX_FILES files.
+ */
 public class FilesystemStorage implements BlobStorage {
-	private final String rootDir;
-	private static final int CHUNK_SIZE = 4096;
-	private static final String DEFAULT_ROOT_DIR = "/tmp/";
+	private static final Logger Log = Logger.getLogger(FilesystemStorage.class.getName());
+
+	private static final String ROOT_DIR = System.getProperty("BLOB_STORAGE_DIR", "/tmp/tukano-blobs");
+	private static final int MMAP_AFTER_READS = Integer.getInteger("BLOB_MMAP_AFTER_READS", 3);
+	private static final long MMAP_MAX_BYTES = Long.getLong("BLOB_MMAP_MAX_BYTES", 64 * 1024 * 1024);
+	private static final int MMAP_MAX_FILES = Integer.getInteger("BLOB_MMAP_MAX_FILES", 256);
+	private static final int MAX_TRACKED_FILES = 10000;
+	private static final int WRITE_LOCKS = 256;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+	// URL-encoded names never have a '@'.
+	private static final String DIGEST_SUFFIX = "@sha256";
+	private static final String TMP_SUFFIX = "@tmp";
+
+	private final Path root;
+	private final DigestIndex index = new DigestIndex();
+	private final Set<Path> dirs = ConcurrentHashMap.newKeySet();
+	private final HotFiles hot = new HotFiles();
+	// Writes of the same path check for an existing blob and publish theirs one at a time.
+	private final Object[] writeLocks = new Object[WRITE_LOCKS];
 
 	public FilesystemStorage() {
-		this.rootDir = DEFAULT_ROOT_DIR;
+		this(ROOT_DIR);
+	}
+
+	public FilesystemStorage(String rootDir) {
+		this.root = Path.of(rootDir);
+		for (int i = 0; i < WRITE_LOCKS; i++)
+			writeLocks[i] = new Object();
 	}
-	
+
 	@Override
 	public Result<Void> write(String path, byte[] bytes) {
+		return write(path, new ByteArrayInputStream(bytes), Long.MAX_VALUE);
+	}
+
+	/**
+	 * The SHA-256 of the blob is kept in a sidecar file, <blob>@sha256, so an existing blob is
+	 * compared without reading it. The sidecar is written after the blob is in place, and is
+	 * ignored if the blob is missing, so a crash in between never leaves a blob that seems to
+	 * exist; a blob without its sidecar is hashed again when needed.
+	 */
+	@Override
+	public Result<Void> write(String path, InputStream in, long maxBytes) {
 		if (path == null)
 			return error(BAD_REQUEST);
 
-		var file = toFile( path );
+		Path tmp = null;
+		try (var hin = new HashingInputStream(in, maxBytes)) {
+			var file = fileOf( path, true );
+			var existing = storedDigest(path, file);
+			if (existing != null)
+				return MessageDigest.isEqual(existing, hin.drain().sha256Digest()) ? ok() : error(CONFLICT);
+
+			tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TMP_SUFFIX);
+			Files.copy(hin, tmp, StandardCopyOption.REPLACE_EXISTING);
 
-		if (file.exists()) {
-			if (Arrays.equals(Hash.sha256(bytes), Hash.sha256(IO.read(file))))
-				return ok();
-			else
-				return error(CONFLICT);
+			var digest = hin.sha256Digest();
+			synchronized (writeLock(path)) {
+				// Another upload of the same path may have finished meanwhile.
+				existing = storedDigest(path, file);
+				if (existing != null)
+					return MessageDigest.isEqual(existing, digest) ? ok() : error(CONFLICT);
 
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+				tmp = null;
+				writeDigest(file, digest);
+				index.put(path, digest);
+			}
+			return ok();
+		} catch (HashingInputStream.TooLargeException e) {
+			return error(TOO_LARGE);
+		} catch (IOException e) {
+			Log.warning("Unable to write blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		} finally {
+			if (tmp != null)
+				deleteQuietly(tmp);
 		}
-		IO.write(file, bytes);
-		return ok();
 	}
 
 	@Override
 	public Result<byte[]> read(String path) {
-		if (path == null)
-			return error(BAD_REQUEST);
-		
-		var file = toFile( path );
-		if( ! file.exists() )
-			return error(NOT_FOUND);
-		
-		var bytes = IO.read(file);
-		return bytes != null ? ok( bytes ) : error( INTERNAL_ERROR );
+		var res = open(path, 0, -1);
+		if (!res.isOK())
+			return error(res.error());
+
+		try (var in = res.value().stream()) {
+			return ok( in.readAllBytes() );
+		} catch (IOException e) {
+			Log.warning("Unable to read blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
 	}
 
 	@Override
 	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		var res = open(path, 0, -1);
+		if (!res.isOK())
+			return error(res.error());
+
+		try (var in = res.value().stream()) {
+			var chunk = new byte[CHUNK_SIZE];
+			int n;
+			while ((n = in.read(chunk)) > 0)
+				sink.accept(Arrays.copyOf(chunk, n));
+			return ok();
+		} catch (IOException e) {
+			Log.warning("Unable to read blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<BlobContent> open(String path, long offset, long length) {
 		if (path == null)
 			return error(BAD_REQUEST);
-		
-		var file = toFile( path );
-		if( ! file.exists() )
+
+		var mapped = hot.mapped(path);
+		if (mapped != null)
+			return ok( slice(mapped, offset, length) );
+
+		try {
+			var file = fileOf( path, false );
+			var channel = FileChannel.open( file, StandardOpenOption.READ );
+			try {
+				var attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				long size = channel.size();
+				var version = String.format("\"%x-%x\"", size, attrs.lastModifiedTime().toMillis());
+
+				if (hot.read(path) && size <= MMAP_MAX_BYTES) {
+					var map = new Mapped(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), version);
+					channel.close();
+					hot.map(path, map);
+					return ok( slice(map, offset, length) );
+				}
+
+				long start = Ranges.start(offset, size);
+				long count = Ranges.count(start, length, size);
+				return ok( new BlobContent(new FileRangeInputStream(channel, start, count), start, count, size, version));
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (NoSuchFileException e) {
 			return error(NOT_FOUND);
-		
-		IO.read( file, CHUNK_SIZE, sink );
-		return ok();
+		} catch (IOException e) {
+			Log.warning("Unable to open blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
 	}
-	
+
 	@Override
 	public Result<Void> delete(String path) {
 		if (path == null)
 			return error(BAD_REQUEST);
 
 		try {
-			var file = toFile( path );
-			Files.walk(file.toPath())
-			.sorted(Comparator.reverseOrder())
-			.map(Path::toFile)
-			.forEach(File::delete);
+			var file = fileOf( path, false );
+			synchronized (writeLock(path)) {
+				index.remove(path);
+				hot.remove(path);
+				boolean deleted = Files.deleteIfExists(file);
+				Files.deleteIfExists(digestFile(file));
+				return deleted ? ok() : error(NOT_FOUND);
+			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			Log.warning("Unable to delete blob " + path + ": " + e.getMessage());
 			return error(INTERNAL_ERROR);
 		}
-		return ok();
 	}
-	
-	private File toFile(String path) {
-		var res = new File( rootDir + path );
-		
-		var parent = res.getParentFile();
-		if( ! parent.exists() )
-			parent.mkdirs();
-		
-		return res;
+
+	/**
+	 * @return the SHA-256 of the blob, or null if it does not exist
+	 */
+	private byte[] storedDigest(String path, Path file) throws IOException {
+		var digest = index.get(path);
+		if (digest != null)
+			return digest;
+
+		// A sidecar without its blob is left over from a failed write or delete.
+		if (!Files.exists(file))
+			return null;
+		try {
+			digest = Files.readAllBytes(digestFile(file));
+		} catch (NoSuchFileException e) {
+			// Written without a sidecar file.
+			try (var existing = Files.newInputStream(file)) {
+				digest = HashingInputStream.sha256Of(existing);
+			}
+			writeDigest(file, digest);
+		}
+		index.put(path, digest);
+		return digest;
+	}
+
+	// Replaces the sidecar atomically, so it is never seen half written.
+	private void writeDigest(Path file, byte[] digest) throws IOException {
+		var tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TMP_SUFFIX);
+		try {
+			Files.write(tmp, digest);
+			Files.move(tmp, digestFile(file), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			deleteQuietly(tmp);
+		}
+	}
+
+	private Object writeLock(String path) {
+		return writeLocks[(path.hashCode() & 0x7FFFFFFF) % WRITE_LOCKS];
+	}
+
+	/**
+	 * @param create if the directory of the file is to be created, when missing
+	 */
+	private Path fileOf(String path, boolean create) throws IOException {
+		int h = path.hashCode();
+		h ^= h >>> 16;
+		var dir = root.resolve(String.format("%02x", (h >>> 8) & 0xFF)).resolve(String.format("%02x", h & 0xFF));
+		if (create && !dirs.contains(dir)) {
+			Files.createDirectories(dir);
+			dirs.add(dir);
+		}
+		return dir.resolve(URLEncoder.encode(path, UTF_8));
+	}
+
+	private static Path digestFile(Path file) {
+		return file.resolveSibling(file.getFileName() + DIGEST_SUFFIX);
+	}
+
+	private static BlobContent slice(Mapped mapped, long offset, long length) {
+		var data = mapped.data().duplicate();
+		long size = data.capacity();
+		long start = Ranges.start(offset, size);
+		long count = Ranges.count(start, length, size);
+		data.position((int) start).limit((int) (start + count));
+		return new BlobContent(new ByteBufferInputStream(data), start, count, size, mapped.version());
+	}
+
+	private static void deleteQuietly(Path file) {
+		try {
+			Files.deleteIfExists(file);
+		} catch (IOException e) {
+			Log.warning("Unable to delete " + file + ": " + e.getMessage());
+		}
 	}
 
-	
+	record Mapped(MappedByteBuffer data, String version) {
+	}
+
+	/**
+	 * Read counts of the most recently read files, and the mappings of the hot ones.
+	 */
+	static class HotFiles {
+		private final Map<String, Integer> reads = lru(MAX_TRACKED_FILES);
+		private final Map<String, Mapped> mappings = lru(MMAP_MAX_FILES);
+
+		HotFiles() {
+			Metrics.gauge("blobs.fs.mapped", this::size);
+		}
+
+		synchronized Mapped mapped(String path) {
+			var m = mappings.get(path);
+			Metrics.counter(m != null ? "blobs.fs.mmap.hits" : "blobs.fs.mmap.misses").increment();
+			return m;
+		}
+
+		/**
+		 * @return true if the file became hot
+		 */
+		synchronized boolean read(String path) {
+			return reads.merge(path, 1, Integer::sum) > MMAP_AFTER_READS;
+		}
+
+		synchronized void map(String path, Mapped m) {
+			mappings.put(path, m);
+		}
+
+		synchronized void remove(String path) {
+			reads.remove(path);
+			mappings.remove(path);
+		}
+
+		private synchronized int size() {
+			return mappings.size();
+		}
+
+		private static <V> Map<String, V> lru(int capacity) {
+			return new LinkedHashMap<>(256, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+					return size() > capacity;
+				}
+			};
+		}
+	}
 }
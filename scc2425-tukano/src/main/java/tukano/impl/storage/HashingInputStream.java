@@ -0,0 +1,103 @@
+package tukano.impl.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+import utils.Hash;
+
+/**
+ * Computes the SHA-256 of the bytes read through it and fails once more than maxBytes
+ * were read, so blobs can be hashed and capped while they stream, without buffering them.
+ */
+public class HashingInputStream extends FilterInputStream {
+
+	/**
+	 * Thrown when the stream has more than the accepted number of bytes.
+	 */
+	public static class TooLargeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		TooLargeException(long maxBytes) {
+			super("Blob exceeds " + maxBytes + " bytes");
+		}
+	}
+
+	private final MessageDigest digest;
+	private final long maxBytes;
+	private long size;
+
+	public HashingInputStream(InputStream in, long maxBytes) {
+		super(in);
+		this.digest = Hash.newSha256();
+		this.maxBytes = maxBytes;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			count(1);
+			digest.update((byte) b);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			count(n);
+			digest.update(b, off, n);
+		}
+		return n;
+	}
+
+	// Skipped bytes would not be hashed.
+	@Override
+	public long skip(long n) throws IOException {
+		return 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	/**
+	 * Reads the rest of the stream, so the hash covers all of it.
+	 */
+	public HashingInputStream drain() throws IOException {
+		var buf = new byte[8192];
+		while (read(buf, 0, buf.length) >= 0)
+			;
+		return this;
+	}
+
+	/**
+	 * @return the SHA-256 of the bytes read so far; to be called once, at the end of the stream
+	 */
+	public byte[] sha256Digest() {
+		return digest.digest();
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the SHA-256 of the rest of the stream, which is read and closed
+	 */
+	public static byte[] sha256Of(InputStream in) throws IOException {
+		try (var hin = new HashingInputStream(in, Long.MAX_VALUE)) {
+			return hin.drain().sha256Digest();
+		}
+	}
+
+	private void count(int n) throws TooLargeException {
+		size += n;
+		if (size > maxBytes)
+			throw new TooLargeException(maxBytes);
+	}
+}
@@ -0,0 +1,24 @@
+package tukano.impl.storage;
+
+/**
+ * Helpers to resolve the ranges of {@link BlobStorage#open(String, long, long)} against the size of a blob.
+ */
+public final class Ranges {
+
+	private Ranges() {
+	}
+
+	/**
+	 * @return the position of the first byte of the range, at most size
+	 */
+	public static long start(long offset, long size) {
+		return offset < 0 ? Math.max(0, size + offset) : Math.min(offset, size);
+	}
+
+	/**
+	 * @return the number of bytes of the range that starts at start
+	 */
+	public static long count(long start, long length, long size) {
+		return length < 0 ? size - start : Math.min(length, size - start);
+	}
+}
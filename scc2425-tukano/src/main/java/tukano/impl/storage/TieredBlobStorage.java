@@ -0,0 +1,290 @@
+package tukano.impl.storage;
+
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+import static tukano.api.Result.ErrorCode.BAD_REQUEST;
+import static tukano.api.Result.ErrorCode.INTERNAL_ERROR;
+import static tukano.api.Result.ErrorCode.NOT_FOUND;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import tukano.api.BlobContent;
+import tukano.api.Result;
+import utils.Metrics;
+
+/**
+ * Blobs kept in a remote store (the cold tier), with the recently uploaded and the most
+ * read ones also on local disk (the hot tier), which is always read first.
+ *
+ * Uploads go to the hot tier and are then copied to the cold one, so the remote store
+ * always has every blob. A blob read from the cold tier BLOB_PROMOTE_AFTER_READS times
+ * (by default, once) is copied to the hot tier in the background.
+ *
+ * The hot tier holds at most BLOB_HOT_CAPACITY_BYTES. Above it, the least read blobs are
+ * demoted (dropped from the hot tier) in the background, down to 90% of the capacity.
+ * Read counts are halved every BLOB_TIER_DECAY_SECONDS, so blobs that are no longer read
+ * eventually make room for others.
+ *
+ * Blobs found on disk but written before a restart are accounted for when first read.
+ *
+ * A promotion, demotion or delete of a blob never overlaps another, so a blob deleted while
+ * being promoted does not come back in the hot tier, and one demoted while being read is not
+ * accounted for again. That only holds within a node: a delete
+ * made elsewhere leaves the hot copies of other nodes in place (and served) until they
+ * are demoted.
+ */
+public class TieredBlobStorage implements BlobStorage {
+	private static final Logger Log = Logger.getLogger(TieredBlobStorage.class.getName());
+
+	private static final long CAPACITY = Long.getLong("BLOB_HOT_CAPACITY_BYTES", 10L * 1024 * 1024 * 1024);
+	private static final int PROMOTE_AFTER_READS = Integer.getInteger("BLOB_PROMOTE_AFTER_READS", 1);
+	private static final long DECAY_SECONDS = Long.getLong("BLOB_TIER_DECAY_SECONDS", 3600);
+	private static final int MAX_TRACKED = 100000;
+	private static final int LOCKS = 256;
+
+	private final BlobStorage hot;
+	private final BlobStorage cold;
+
+	// Sizes of the blobs in the hot tier.
+	private final Map<String, Long> hotBlobs = new ConcurrentHashMap<>();
+	private final AtomicLong hotBytes = new AtomicLong();
+
+	// Read counts of the most recently read blobs, of both tiers.
+	private final Map<String, Integer> reads = new LinkedHashMap<>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+			return size() > MAX_TRACKED;
+		}
+	};
+
+	private final Set<String> migrating = ConcurrentHashMap.newKeySet();
+	// Promotions, demotions and deletes of the same path run one at a time.
+	private final Object[] locks = new Object[LOCKS];
+	private final ScheduledExecutorService migrations;
+
+	public TieredBlobStorage(BlobStorage hot, BlobStorage cold) {
+		this.hot = hot;
+		this.cold = cold;
+		for (int i = 0; i < LOCKS; i++)
+			locks[i] = new Object();
+		this.migrations = Executors.newSingleThreadScheduledExecutor(r -> {
+			var t = new Thread(r, "blob-tiering");
+			t.setDaemon(true);
+			return t;
+		});
+		migrations.scheduleAtFixedRate(this::decay, DECAY_SECONDS, DECAY_SECONDS, TimeUnit.SECONDS);
+
+		Metrics.gauge("blobs.tier.hot.bytes", hotBytes::get);
+		Metrics.gauge("blobs.tier.hot.blobs", hotBlobs::size);
+	}
+
+	@Override
+	public Result<Void> write(String path, byte[] bytes) {
+		return write(path, new ByteArrayInputStream(bytes), Long.MAX_VALUE);
+	}
+
+	@Override
+	public Result<Void> write(String path, InputStream in, long maxBytes) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		var res = hot.write(path, in, maxBytes);
+		if (!res.isOK())
+			return res;
+
+		var content = hot.open(path, 0, -1);
+		if (!content.isOK())
+			return error(content.error());
+
+		try (var local = content.value().stream()) {
+			res = cold.write(path, local, maxBytes);
+		} catch (IOException e) {
+			Log.warning("Unable to close blob " + path + ": " + e.getMessage());
+		}
+		if (res.isOK())
+			addHot(path, content.value().size());
+		else
+			dropHot(path);
+		return res;
+	}
+
+	@Override
+	public Result<Void> delete(String path) {
+		if (path == null)
+			return error(BAD_REQUEST);
+
+		Result<Void> res, local;
+		synchronized (lock(path)) {
+			res = cold.delete(path);
+			local = dropHot(path);
+		}
+		synchronized (reads) {
+			reads.remove(path);
+		}
+		return res.isOK() || res.error() != NOT_FOUND ? res : local;
+	}
+
+	@Override
+	public Result<byte[]> read(String path) {
+		var res = hot.read(path);
+		if (res.isOK()) {
+			readHot(path, res.value().length);
+			return res;
+		}
+		readCold(path);
+		return cold.read(path);
+	}
+
+	@Override
+	public Result<Void> read(String path, Consumer<byte[]> sink) {
+		var res = open(path, 0, -1);
+		if (!res.isOK())
+			return error(res.error());
+
+		try (var in = res.value().stream()) {
+			var chunk = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(chunk)) > 0)
+				sink.accept(Arrays.copyOf(chunk, n));
+			return ok();
+		} catch (IOException e) {
+			Log.warning("Unable to read blob " + path + ": " + e.getMessage());
+			return error(INTERNAL_ERROR);
+		}
+	}
+
+	@Override
+	public Result<BlobContent> open(String path, long offset, long length) {
+		var res = hot.open(path, offset, length);
+		if (res.isOK()) {
+			readHot(path, res.value().size());
+			return res;
+		}
+		if (res.error() != NOT_FOUND)
+			Log.warning("Unable to read blob " + path + " from the hot tier: " + res.error());
+
+		readCold(path);
+		return cold.open(path, offset, length);
+	}
+
+	// A blob read from the hot tier but not accounted for was written before a restart, or
+	// was demoted after the reader opened it, in which case it is no longer there.
+	private void readHot(String path, long size) {
+		Metrics.counter("blobs.tier.hot.reads").increment();
+		count(path);
+		if (!hotBlobs.containsKey(path))
+			synchronized (lock(path)) {
+				if (!hotBlobs.containsKey(path) && inHot(path))
+					addHot(path, size);
+			}
+	}
+
+	private boolean inHot(String path) {
+		var res = hot.open(path, 0, 0);
+		if (!res.isOK())
+			return false;
+		try {
+			res.value().stream().close();
+		} catch (IOException e) {
+			Log.fine("Unable to close blob " + path + ": " + e.getMessage());
+		}
+		return true;
+	}
+
+	private void readCold(String path) {
+		Metrics.counter("blobs.tier.cold.reads").increment();
+		if (count(path) >= PROMOTE_AFTER_READS && migrating.add(path))
+			migrations.execute(() -> promote(path));
+	}
+
+	private int count(String path) {
+		synchronized (reads) {
+			return reads.merge(path, 1, Integer::sum);
+		}
+	}
+
+	// Holds the lock of the path while copying, so a delete either finds the hot copy or
+	// happens before it, and then the blob is no longer in the cold tier to be copied.
+	private void promote(String path) {
+		try {
+			synchronized (lock(path)) {
+				var content = cold.open(path, 0, -1);
+				if (!content.isOK())
+					return;
+				try (var in = content.value().stream()) {
+					if (hot.write(path, in, Long.MAX_VALUE).isOK()) {
+						Metrics.counter("blobs.tier.promotions").increment();
+						addHot(path, content.value().size());
+					}
+				}
+			}
+		} catch (Exception e) {
+			Log.warning("Unable to promote blob " + path + ": " + e.getMessage());
+		} finally {
+			migrating.remove(path);
+		}
+	}
+
+	private Object lock(String path) {
+		return locks[(path.hashCode() & 0x7FFFFFFF) % LOCKS];
+	}
+
+	private void addHot(String path, long size) {
+		if (hotBlobs.put(path, size) == null)
+			hotBytes.addAndGet(size);
+		if (hotBytes.get() > CAPACITY)
+			migrations.execute(this::demote);
+	}
+
+	private Result<Void> dropHot(String path) {
+		var size = hotBlobs.remove(path);
+		if (size != null)
+			hotBytes.addAndGet(-size);
+		return hot.delete(path);
+	}
+
+	// Drops the least read blobs from the hot tier, down to 90% of its capacity.
+	private void demote() {
+		if (hotBytes.get() <= CAPACITY)
+			return;
+
+		Map<String, Integer> counts;
+		synchronized (reads) {
+			counts = new HashMap<>(reads);
+		}
+		var candidates = new ArrayList<>(hotBlobs.keySet());
+		candidates.sort(Comparator.comparingInt(path -> counts.getOrDefault(path, 0)));
+		for (var path : candidates) {
+			if (hotBytes.get() <= CAPACITY * 9 / 10)
+				break;
+			synchronized (lock(path)) {
+				dropHot(path);
+			}
+			Metrics.counter("blobs.tier.demotions").increment();
+		}
+	}
+
+	private void decay() {
+		synchronized (reads) {
+			reads.replaceAll((path, n) -> n / 2);
+		}
+	}
+}
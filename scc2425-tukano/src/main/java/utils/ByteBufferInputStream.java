@@ -0,0 +1,54 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+/**
+ * Reads the remaining bytes of a buffer, which may be direct, without copying them to the heap first.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buf;
+
+	public ByteBufferInputStream(ByteBuffer buf) {
+		this.buf = buf;
+	}
+
+	@Override
+	public int read() {
+		return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+		if (!buf.hasRemaining())
+			return -1;
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+		buf.position(buf.position() + k);
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return buf.remaining();
+	}
+
+	@Override
+	public long transferTo(OutputStream out) throws IOException {
+		int n = buf.remaining();
+		Channels.newChannel(out).write(buf);
+		return n;
+	}
+}
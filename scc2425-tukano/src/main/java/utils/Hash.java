@@ -1,52 +1,86 @@
 package utils;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
+/**
+ * Digests, without locks: each thread has its own MessageDigest of each algorithm.
+ *
+ * For data that arrives in pieces (e.g., blob uploads), newSha256() returns a digest of
+ * its own, to be updated incrementally, and sha256(InputStream) hashes a whole stream.
+ */
 public class Hash {
-		static MessageDigest md5;
-		static MessageDigest sha256;
-				
+		private static final int CHUNK_SIZE = 64 * 1024;
+
+		private static final ThreadLocal<MessageDigest> md5 = ThreadLocal.withInitial(() -> digest("MD5"));
+		private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> digest("SHA-256"));
+
 		public static byte[] md5( byte[] data ) {
-			if (md5 == null) {
-				try {
-					md5 = MessageDigest.getInstance("MD5");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
-			}
-			md5.reset();
-			md5.update( data == null ? new byte[0] : data );
-			return md5.digest();
+			var md = md5.get();
+			md.reset();
+			return md.digest( data == null ? new byte[0] : data );
 		}
-		
+
 		public static byte[] sha256( byte[] data ) {
-			if (sha256 == null) {
-				try {
-					sha256 = MessageDigest.getInstance("SHA-256");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
-			}
-			sha256.reset();
-			sha256.update( data == null ? new byte[0] : data );
-			return sha256.digest();
+			var md = sha256.get();
+			md.reset();
+			return md.digest( data == null ? new byte[0] : data );
 		}
-		
-		
-		synchronized public static String of(Object ...values) {
-			if (md5 == null) {
-				try {
-					md5 = MessageDigest.getInstance("MD5");
-				} catch (NoSuchAlgorithmException e) {
-					e.printStackTrace();
-				}
-			}
-			md5.reset();
+
+		public static byte[] sha256( InputStream in ) throws IOException {
+			var md = sha256.get();
+			md.reset();
+			var chunk = new byte[CHUNK_SIZE];
+			int n;
+			while ((n = in.read(chunk)) > 0)
+				md.update(chunk, 0, n);
+			return md.digest();
+		}
+
+		/**
+		 * @return a SHA-256 digest owned by the caller
+		 */
+		public static MessageDigest newSha256() {
+			return digest("SHA-256");
+		}
+
+		/**
+		 * MD5 of the string forms of the values, concatenated, in uppercase hex without
+		 * leading zeros, but at least 16 digits long (as String.format("%016X", ...)).
+		 */
+		public static String of(Object ...values) {
+			var md = md5.get();
+			md.reset();
 			for( var o : values )
-				md5.update( o.toString().getBytes() );
+				md.update( o.toString().getBytes() );
 
-			return String.format("%016X", new BigInteger(1, md5.digest()));
+			var hex = Hex.of( md.digest() );
+			int zeros = 0;
+			while (zeros < hex.length() - 16 && hex.charAt(zeros) == '0')
+				zeros++;
+			return zeros == 0 ? hex : hex.substring(zeros);
 		};
+
+		/**
+		 * Compares in a time that depends only on the lengths, not on where the strings
+		 * differ, so that comparing secrets (e.g., signatures) does not leak them.
+		 */
+		public static boolean equals(String a, String b) {
+			if (a == null || b == null || a.length() != b.length())
+				return false;
+			int diff = 0;
+			for (int i = 0; i < a.length(); i++)
+				diff |= a.charAt(i) ^ b.charAt(i);
+			return diff == 0;
+		}
+
+		private static MessageDigest digest(String algorithm) {
+			try {
+				return MessageDigest.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(algorithm + " is not available", e);
+			}
+		}
 }
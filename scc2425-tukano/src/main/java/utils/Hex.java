@@ -1,20 +1,46 @@
 package utils;
 
-import java.util.Arrays;
-
 public class Hex {
-	static final String hexits = "0123456789ABCDEF";
-	
+	private static final char[] HEXITS = "0123456789ABCDEF".toCharArray();
+
 	public static String of( byte[] data ) {
 		return of( data, data.length);
 	}
-	
+
+	/**
+	 * Uppercase hex of the first len bytes, written straight into the characters of the
+	 * result, with no intermediate copies.
+	 */
 	public static String of( byte[] data, int len ) {
-		var sb = new StringBuilder();
-		for ( var b : Arrays.copyOf(data, len) ) {
-			sb.append( hexits.charAt( (b & 0xF0 ) >>> 4 ));;
-			sb.append( hexits.charAt( (b & 0x0F ) ));
-		}		
-		return sb.toString();
+		var chars = new char[len * 2];
+		for (int i = 0, j = 0; i < len; i++) {
+			int b = data[i] & 0xFF;
+			chars[j++] = HEXITS[b >>> 4];
+			chars[j++] = HEXITS[b & 0x0F];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Compares, in constant time, a hex string (of any case) with the bytes it should encode,
+	 * without decoding it.
+	 */
+	public static boolean matches( String hex, byte[] data ) {
+		return hex != null && matches( hex, 0, data );
+	}
+
+	/**
+	 * As matches(hex, data), for the hex digits from offset to the end of the string.
+	 */
+	public static boolean matches( String hex, int offset, byte[] data ) {
+		if (hex.length() - offset != data.length * 2)
+			return false;
+		int diff = 0;
+		for (int i = 0, j = offset; i < data.length; i++) {
+			int b = data[i] & 0xFF;
+			diff |= (hex.charAt(j++) | 0x20) ^ (HEXITS[b >>> 4] | 0x20);
+			diff |= (hex.charAt(j++) | 0x20) ^ (HEXITS[b & 0x0F] | 0x20);
+		}
+		return diff == 0;
 	}
 }
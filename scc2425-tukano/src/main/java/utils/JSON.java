@@ -1,38 +1,114 @@
 package utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+/**
+ * JSON (de)serialization with a single ObjectMapper, also used by the REST providers (see
+ * tukano.impl.rest.utils.JacksonMapperResolver).
+ *
+ * The mapper is configured once and then only read from, so it is shared by all threads
+ * without locking. The ObjectReader and ObjectWriter of each type are built once and kept.
+ */
 final public class JSON {
 	final static ObjectMapper mapper = new ObjectMapper();
 
-	synchronized public static final String encode(Object obj) {
+	private static final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+	private static final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	private JSON() {
+	}
+
+	public static ObjectMapper mapper() {
+		return mapper;
+	}
+
+	public static final String encode(Object obj) {
 		try {
-			return mapper.writeValueAsString(obj);
+			return writer(obj).writeValueAsString(obj);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return "";
 		}
 	}
 
-	synchronized public static final <T> T decode(String json, Class<T> classOf) {
+	public static final byte[] encodeBytes(Object obj) {
+		try {
+			return writer(obj).writeValueAsBytes(obj);
+		} catch (JsonProcessingException e) {
+			e.printStackTrace();
+			return new byte[0];
+		}
+	}
+
+	public static final void write(OutputStream out, Object obj) throws IOException {
+		writer(obj).writeValue(out, obj);
+	}
+
+	public static final <T> T decode(String json, Class<T> classOf) {
 		try {
-			var res = mapper.readValue(json, classOf);
-			return res;
+			return reader(classOf).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
 
-	synchronized public static final <T> T decode(String json, TypeReference<T> typeOf) {
+	public static final <T> T decode(String json, TypeReference<T> typeOf) {
 		try {
-			var res = mapper.readValue(json, typeOf);
-			return res;
+			return reader(typeOf).readValue(json);
 		} catch (JsonProcessingException e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
-}
\ No newline at end of file
+
+	public static final <T> T decode(byte[] json, Class<T> classOf) {
+		try {
+			return reader(classOf).readValue(json);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public static final <T> T decode(byte[] json, TypeReference<T> typeOf) {
+		try {
+			return reader(typeOf).readValue(json);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public static final <T> T read(InputStream in, Class<T> classOf) throws IOException {
+		return reader(classOf).readValue(in);
+	}
+
+	public static final <T> T read(InputStream in, TypeReference<T> typeOf) throws IOException {
+		return reader(typeOf).readValue(in);
+	}
+
+	private static ObjectWriter writer(Object obj) {
+		var type = obj == null ? Object.class : obj.getClass();
+		return writers.computeIfAbsent(type, mapper::writerFor);
+	}
+
+	private static ObjectReader reader(Class<?> type) {
+		return readers.computeIfAbsent(type, __ -> mapper.readerFor(type));
+	}
+
+	private static ObjectReader reader(TypeReference<?> type) {
+		return readers.computeIfAbsent(type.getType(), __ -> mapper.readerFor(type));
+	}
+}
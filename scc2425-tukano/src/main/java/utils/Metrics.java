@@ -0,0 +1,55 @@
+package utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide registry of named counters and gauges.
+ *
+ * Counters are LongAdders, so they can be bumped from request threads without contention.
+ * Gauges are sampled only when a snapshot is taken.
+ *
+ * If the system property METRICS_REPORT_SECONDS is set, a snapshot is logged periodically.
+ */
+final public class Metrics {
+	private static final Logger Log = Logger.getLogger(Metrics.class.getName());
+
+	private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private static final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+	static {
+		var period = Integer.getInteger("METRICS_REPORT_SECONDS", 0);
+		if (period > 0) {
+			var reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+				var t = new Thread(r, "metrics-reporter");
+				t.setDaemon(true);
+				return t;
+			});
+			reporter.scheduleAtFixedRate(() -> Log.info("METRICS: " + snapshot() + "\n"), period, period, TimeUnit.SECONDS);
+		}
+	}
+
+	private Metrics() {
+	}
+
+	public static LongAdder counter(String name) {
+		return counters.computeIfAbsent(name, __ -> new LongAdder());
+	}
+
+	public static void gauge(String name, Supplier<? extends Number> value) {
+		gauges.put(name, value);
+	}
+
+	public static Map<String, Number> snapshot() {
+		var res = new TreeMap<String, Number>();
+		counters.forEach((name, c) -> res.put(name, c.sum()));
+		gauges.forEach((name, g) -> res.put(name, g.get()));
+		return res;
+	}
+}
@@ -1,7 +1,15 @@
 package tukano.clients.rest;
 
+import static tukano.api.Result.error;
+import static tukano.api.Result.ok;
+
+import java.io.InputStream;
+
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response.Status;
+import tukano.api.BlobContent;
 import tukano.api.Blobs;
 import tukano.api.Result;
 import tukano.api.rest.RestBlobs;
@@ -20,6 +28,14 @@ public class RestBlobsClient extends RestClient implements Blobs {
 				.post( Entity.entity(bytes, MediaType.APPLICATION_OCTET_STREAM_TYPE)));
 	}
 
+	private Result<Void> _upload(String blobURL, InputStream bytes, String token) {
+		return super.toJavaResult(
+				client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.post( Entity.entity(bytes, MediaType.APPLICATION_OCTET_STREAM_TYPE)));
+	}
+
 	private Result<byte[]> _download(String blobURL, String token) {
 		return super.toJavaResult(
 				client.target( blobURL )
@@ -29,6 +45,47 @@ public class RestBlobsClient extends RestClient implements Blobs {
 				.get(), byte[].class);
 	}
 
+	// The response is closed with the stream.
+	private Result<InputStream> _downloadStream(String blobURL, String token) {
+		var r = client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+				.get();
+
+		if (r.getStatus() == Status.OK.getStatusCode() && r.hasEntity())
+			return ok(r.readEntity(InputStream.class));
+
+		r.close();
+		return error(getErrorCodeFrom(r.getStatus()));
+	}
+
+	// Content-Range: bytes first-last/size, only in 206 responses.
+	private Result<BlobContent> _download(String blobURL, long offset, long length, String ifVersion, String token) {
+		var range = offset < 0 ? "bytes=" + offset : "bytes=" + offset + "-" + (length < 0 ? "" : offset + length - 1);
+		var r = client.target( blobURL )
+				.queryParam(RestBlobs.TOKEN, token)
+				.request()
+				.accept(MediaType.APPLICATION_OCTET_STREAM_TYPE)
+				.header(RestBlobs.RANGE, range)
+				.header(RestBlobs.IF_RANGE, ifVersion)
+				.get();
+
+		var status = r.getStatusInfo().toEnum();
+		if (status == Status.OK || status == Status.PARTIAL_CONTENT) {
+			long size = r.getLength(), first = 0;
+			var contentRange = r.getHeaderString("Content-Range");
+			if (status == Status.PARTIAL_CONTENT && contentRange != null) {
+				var parts = contentRange.substring("bytes ".length()).split("[-/]");
+				first = Long.parseLong(parts[0]);
+				size = Long.parseLong(parts[2]);
+			}
+			return ok(new BlobContent(r.readEntity(InputStream.class), first, r.getLength(), size, r.getHeaderString(HttpHeaders.ETAG)));
+		}
+		r.close();
+		return error(getErrorCodeFrom(status.getStatusCode()));
+	}
+
 	private Result<Void> _delete(String blobURL, String token) {
 		return super.toJavaResult(
 				client.target( blobURL )
@@ -56,6 +113,22 @@ public class RestBlobsClient extends RestClient implements Blobs {
 		return super.reTry( () -> _download(blobId, token));
 	}
 
+	// A stream cannot be sent twice, so there are no retries.
+	@Override
+	public Result<Void> upload(String blobId, InputStream bytes, String token) {
+		return _upload(blobId, bytes, token);
+	}
+
+	@Override
+	public Result<InputStream> downloadStream(String blobId, String token) {
+		return super.reTry( () -> _downloadStream(blobId, token));
+	}
+
+	@Override
+	public Result<BlobContent> download(String blobId, long offset, long length, String ifVersion, String token) {
+		return super.reTry( () -> _download(blobId, offset, length, ifVersion, token));
+	}
+
 	@Override
 	public Result<Void> delete(String blobId, String token) {
 		return super.reTry( () -> _delete(blobId, token));
@@ -114,6 +114,7 @@ public class RestClient {
 		case 403 -> ErrorCode.FORBIDDEN;
 		case 404 -> ErrorCode.NOT_FOUND;
 		case 400 -> ErrorCode.BAD_REQUEST;
+		case 413 -> ErrorCode.TOO_LARGE;
 		case 500 -> ErrorCode.INTERNAL_ERROR;
 		case 501 -> ErrorCode.NOT_IMPLEMENTED;
 		default -> ErrorCode.INTERNAL_ERROR;
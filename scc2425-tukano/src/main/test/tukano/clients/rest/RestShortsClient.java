@@ -1,8 +1,10 @@
 package tukano.clients.rest;
 
 import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.client.WebTarget;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.Short;
 import tukano.api.Shorts;
@@ -53,6 +55,17 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.get(), new GenericType<List<String>>() {});
 	}
 
+	public Result<Page<String>> _getShorts(String userId, String cursor, int limit) {
+		return super.toJavaResult(
+				paged(target
+				.path(userId)
+				.path(RestShorts.SHORTS)
+				.path(RestShorts.PAGE), cursor, limit)
+				.request()
+				.accept( MediaType.APPLICATION_JSON)
+				.get(), new GenericType<Page<String>>() {});
+	}
+
 	public Result<Void> _follow(String userId1, String userId2, boolean isFollowing, String password) {
 		return super.toJavaResult(
 				target
@@ -75,6 +88,18 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.get(), new GenericType<List<String>>() {});
 	}
 
+	public Result<Page<String>> _followers(String userId, String password, String cursor, int limit) {
+		return super.toJavaResult(
+				paged(target
+				.path(userId)
+				.path(RestShorts.FOLLOWERS)
+				.path(RestShorts.PAGE)
+				.queryParam(RestShorts.PWD, password ), cursor, limit)
+				.request()
+				.accept( MediaType.APPLICATION_JSON)
+				.get(), new GenericType<Page<String>>() {});
+	}
+
 	public Result<Void> _like(String shortId, String userId, boolean isLiked, String password) {
 		return super.toJavaResult(
 				target
@@ -97,6 +122,18 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.get(), new GenericType<List<String>>() {});
 	}
 
+	public Result<Page<String>> _likes(String shortId, String password, String cursor, int limit) {
+		return super.toJavaResult(
+				paged(target
+				.path(shortId)
+				.path(RestShorts.LIKES)
+				.path(RestShorts.PAGE)
+				.queryParam(RestShorts.PWD, password ), cursor, limit)
+				.request()
+				.accept( MediaType.APPLICATION_JSON)
+				.get(), new GenericType<Page<String>>() {});
+	}
+
 	public Result<List<String>> _getFeed(String userId, String password) {
 		return super.toJavaResult(
 				target
@@ -108,6 +145,18 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.get(), new GenericType<List<String>>() {});
 	}
 
+	public Result<Page<String>> _getFeed(String userId, String password, String cursor, int limit) {
+		return super.toJavaResult(
+				paged(target
+				.path(userId)
+				.path(RestShorts.FEED)
+				.path(RestShorts.PAGE)
+				.queryParam(RestShorts.PWD, password ), cursor, limit)
+				.request()
+				.accept( MediaType.APPLICATION_JSON)
+				.get(), new GenericType<Page<String>>() {});
+	}
+
 	public Result<Void> _deleteAllShorts(String userId, String password, String token) {
 		return super.toJavaResult(
 				target
@@ -126,6 +175,12 @@ public class RestShortsClient extends RestClient implements Shorts{
 				.request()
 				.get());
 	}
+
+	private static WebTarget paged(WebTarget target, String cursor, int limit) {
+		if (cursor != null)
+			target = target.queryParam(RestShorts.CURSOR, cursor);
+		return target.queryParam(RestShorts.LIMIT, limit);
+	}
 		
 	@Override
 	public Result<Short> createShort(String userId, String password) {
@@ -147,6 +202,11 @@ public class RestShortsClient extends RestClient implements Shorts{
 		return super.reTry( () -> _getShorts(userId));
 	}
 
+	@Override
+	public Result<Page<String>> getShorts(String userId, String cursor, int limit) {
+		return super.reTry( () -> _getShorts(userId, cursor, limit));
+	}
+
 	@Override
 	public Result<Void> follow(String userId1, String userId2, boolean isFollowing, String password) {
 		return super.reTry( () -> _follow(userId1, userId2, isFollowing, password));
@@ -157,6 +217,11 @@ public class RestShortsClient extends RestClient implements Shorts{
 		return super.reTry( () -> _followers(userId, password));
 	}
 
+	@Override
+	public Result<Page<String>> followers(String userId, String password, String cursor, int limit) {
+		return super.reTry( () -> _followers(userId, password, cursor, limit));
+	}
+
 	@Override
 	public Result<Void> like(String shortId, String userId, boolean isLiked, String password) {
 		return super.reTry( () -> _like(shortId, userId, isLiked, password));
@@ -167,11 +232,21 @@ public class RestShortsClient extends RestClient implements Shorts{
 		return super.reTry( () -> _likes(shortId, password));
 	}
 
+	@Override
+	public Result<Page<String>> likes(String shortId, String password, String cursor, int limit) {
+		return super.reTry( () -> _likes(shortId, password, cursor, limit));
+	}
+
 	@Override
 	public Result<List<String>> getFeed(String userId, String password) {
 		return super.reTry( () -> _getFeed(userId, password));
 	}
 
+	@Override
+	public Result<Page<String>> getFeed(String userId, String password, String cursor, int limit) {
+		return super.reTry( () -> _getFeed(userId, password, cursor, limit));
+	}
+
 	@Override
 	public Result<Void> deleteAllShorts(String userId, String password, String token) {
 		return super.reTry( () -> _deleteAllShorts(userId, password, token));
@@ -3,6 +3,7 @@ package tukano.clients.rest;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.MediaType;
+import tukano.api.Page;
 import tukano.api.Result;
 import tukano.api.User;
 import tukano.api.Users;
@@ -32,6 +33,23 @@ public class RestUsersClient extends RestClient implements Users {
 				.get(), User.class);
 	}
 	
+	private Result<String> _login(String userId, String pwd) {
+		return super.toJavaResult(
+				target.path( userId )
+				.path( RestUsers.SESSION )
+				.queryParam(RestUsers.PWD, pwd).request()
+				.accept(MediaType.APPLICATION_JSON)
+				.post(Entity.json(null)), String.class);
+	}
+
+	private Result<Void> _logout(String userId, String pwd) {
+		return super.toJavaResult(
+				target.path( userId )
+				.path( RestUsers.SESSION )
+				.queryParam(RestUsers.PWD, pwd).request()
+				.delete());
+	}
+	
 	public Result<User> _updateUser(String userId, String password, User user) {
 		return super.toJavaResult(
 				target
@@ -61,6 +79,20 @@ public class RestUsersClient extends RestClient implements Users {
 				.get(), new GenericType<List<User>>() {});
 	}
 
+	public Result<Page<User>> _searchUsers(String pattern, String cursor, int limit) {
+		var t = target
+				.path(RestUsers.SEARCH)
+				.path(RestUsers.PAGE)
+				.queryParam(RestUsers.QUERY, pattern)
+				.queryParam(RestUsers.LIMIT, limit);
+		if (cursor != null)
+			t = t.queryParam(RestUsers.CURSOR, cursor);
+		return super.toJavaResult(
+				t.request()
+				.accept(MediaType.APPLICATION_JSON)
+				.get(), new GenericType<Page<User>>() {});
+	}
+
 	@Override
 	public Result<String> createUser(User user) {
 		return super.reTry( () -> _createUser(user));
@@ -71,6 +103,16 @@ public class RestUsersClient extends RestClient implements Users {
 		return super.reTry( () -> _getUser(userId, pwd));
 	}
 
+	@Override
+	public Result<String> login(String userId, String pwd) {
+		return super.reTry( () -> _login(userId, pwd));
+	}
+
+	@Override
+	public Result<Void> logout(String userId, String pwd) {
+		return super.reTry( () -> _logout(userId, pwd));
+	}
+
 	@Override
 	public Result<User> updateUser(String userId, String pwd, User user) {
 		return super.reTry( () -> _updateUser(userId, pwd, user));
@@ -85,4 +127,9 @@ public class RestUsersClient extends RestClient implements Users {
 	public Result<List<User>> searchUsers(String pattern) {
 		return super.reTry( () -> _searchUsers(pattern));
 	}
+
+	@Override
+	public Result<Page<User>> searchUsers(String pattern, String cursor, int limit) {
+		return super.reTry( () -> _searchUsers(pattern, cursor, limit));
+	}
 }